@@ -0,0 +1,46 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Where one compilation keeps its intermediate files: lexer.xml, parser.xml, Symbol.txt and
+// intermediateCode.txt. Each compilation gets its own store, so compilations running side by side do not
+// overwrite each other's files. A MemoryArtifactStore keeps them off the disk altogether.
+public interface ArtifactStore extends Closeable {
+    // Replaces the artifact with what is written before the stream is closed
+    OutputStream create(String name) throws IOException;
+
+    // Throws FileNotFoundException if there is no such artifact
+    InputStream open(String name) throws IOException;
+
+    boolean contains(String name);
+
+    default void writeLines(String name, List<String> lines) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(create(name), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            }
+        }
+    }
+
+    default BufferedReader reader(String name) throws IOException {
+        return new BufferedReader(new InputStreamReader(open(name), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    // Takes "--workspace <directory>" out of a program's arguments. The phase programs keep their files
+    // there, or in the current directory without the option.
+    static ArtifactStore workspace(List<String> args) {
+        int option = args.indexOf("--workspace");
+        if (option < 0 || option + 1 >= args.size()) {
+            return new DirectoryArtifactStore(Paths.get("."));
+        }
+        Path directory = Paths.get(args.get(option + 1));
+        args.subList(option, option + 2).clear();
+        return new DirectoryArtifactStore(directory);
+    }
+}
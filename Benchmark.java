@@ -0,0 +1,375 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class Benchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // The regex cascade the lexer used before TokenClassifier, kept as the baseline
+    private static final String VARIABLE_REGEX = "V_[a-z]([a-z]|[0-9])*";
+    private static final String FUNCTION_REGEX = "F_[a-z]([a-z]|[0-9])*";
+    private static final String TEXT_REGEX = "\"[^\"]*\"";
+    private static final String NUMBER_REGEX = "-?\\d+(\\.\\d+)?";
+    private static final String RESERVED_KEYWORDS_REGEX = "\\b(main|begin|end|skip|halt|return|print|if|then|else|input|num|text|void|not|sqrt|or|and|eq|grt|add|sub|mul|div)\\b";
+    private static final String OPERATORS_REGEX = "[=+\\-*/<>!;,\\$\\(\\){}]";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java Benchmark lexer|parallel-lexer|incremental-lexer|parser|incremental-parser|pipeline [instructions]");
+            return;
+        }
+
+        int instructions = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        switch (args[0]) {
+            case "lexer":
+                benchmarkLexer(instructions);
+                break;
+            case "parallel-lexer":
+                benchmarkParallelLexer(instructions);
+                break;
+            case "incremental-lexer":
+                benchmarkIncrementalLexer(instructions);
+                break;
+            case "parser":
+                benchmarkParser(instructions);
+                break;
+            case "incremental-parser":
+                benchmarkIncrementalParser(instructions);
+                break;
+            case "pipeline":
+                benchmarkPipeline(instructions);
+                break;
+            default:
+                System.err.println("Unknown benchmark: " + args[0]);
+                System.exit(1);
+        }
+    }
+
+    private static void benchmarkLexer(int instructions) {
+        String[] words = generateProgram(instructions).trim().split("\\s+");
+        System.out.println("Classifying " + words.length + " tokens per round");
+
+        double regexRate = measure("regex cascade", words, true);
+        double dfaRate = measure("DFA classifier", words, false);
+        System.out.println(String.format("Speedup: %.1fx", dfaRate / regexRate));
+
+        // Both paths must agree on every word before the numbers mean anything
+        for (String word : words) {
+            if (classifyWithRegex(word) != TokenClassifier.classify(word)) {
+                System.err.println("Mismatch on '" + word + "'");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void benchmarkParallelLexer(int instructions) throws IOException {
+        Path file = Files.createTempFile("benchmark", ".txt");
+        try {
+            Files.write(file, generateProgram(instructions).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Lexing " + Files.size(file) + " bytes per round");
+
+            Lexer sequential = null;
+            Lexer parallel = null;
+            long sequentialTime = 0;
+            long parallelTime = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                long start = System.nanoTime();
+                sequential = new Lexer();
+                sequential.setParallelThreshold(Long.MAX_VALUE);
+                sequential.tokenizeFile(file.toString());
+                long middle = System.nanoTime();
+                parallel = new Lexer();
+                parallel.tokenizeParallel(file.toString());
+                long end = System.nanoTime();
+                if (round >= WARMUP_ROUNDS) {
+                    sequentialTime += middle - start;
+                    parallelTime += end - middle;
+                }
+            }
+            System.out.println(String.format("%-16s %,10.1f ms/round", "sequential:", sequentialTime / 1e6 / MEASURED_ROUNDS));
+            System.out.println(String.format("%-16s %,10.1f ms/round", "parallel:", parallelTime / 1e6 / MEASURED_ROUNDS));
+            System.out.println(String.format("Speedup: %.1fx", (double) sequentialTime / parallelTime));
+
+            TokenBuffer expected = sequential.getTokens();
+            TokenBuffer actual = parallel.getTokens();
+            if (expected.size() != actual.size()) {
+                System.err.println("Token count mismatch: " + expected.size() + " vs " + actual.size());
+                System.exit(1);
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                if (expected.id(i) != actual.id(i) || expected.type(i) != actual.type(i)
+                        || !expected.word(i).equals(actual.word(i)) || expected.line(i) != actual.line(i)) {
+                    System.err.println("Mismatch at token " + expected.id(i) + ": '" + expected.word(i)
+                            + "' vs '" + actual.word(i) + "'");
+                    System.exit(1);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // Edits one instruction line at a time, like an editor would on each keystroke
+    private static void benchmarkIncrementalLexer(int instructions) throws IOException {
+        String source = generateProgram(instructions);
+        List<String> lines = new ArrayList<>(Arrays.asList(source.split("\n", -1)));
+        IncrementalLexer incremental = new IncrementalLexer(source);
+        System.out.println("Editing a program of " + lines.size() + " lines");
+
+        int edits = 1000;
+        Random random = new Random(42);
+        long incrementalTime = 0;
+        for (int i = 0; i < edits; i++) {
+            int line = 4 + random.nextInt(instructions); // An instruction line
+            String text = "  V_a = add ( V_b , " + i + " ) ;";
+            lines.set(line - 1, text);
+            long start = System.nanoTime();
+            incremental.replaceLines(line, 1, text);
+            incrementalTime += System.nanoTime() - start;
+        }
+
+        String edited = String.join("\n", lines);
+        long fullTime = 0;
+        Lexer full = null;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            full = new Lexer();
+            full.tokenize(new StringReader(edited));
+            if (round >= WARMUP_ROUNDS) {
+                fullTime += System.nanoTime() - start;
+            }
+        }
+        System.out.println(String.format("%-16s %,10.3f ms/edit", "incremental:", incrementalTime / 1e6 / edits));
+        System.out.println(String.format("%-16s %,10.3f ms/edit", "full re-lex:", fullTime / 1e6 / MEASURED_ROUNDS));
+
+        TokenBuffer expected = full.getTokens();
+        TokenBuffer actual = incremental.getTokens();
+        if (expected.size() != actual.size()) {
+            System.err.println("Token count mismatch: " + expected.size() + " vs " + actual.size());
+            System.exit(1);
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.type(i) != actual.type(i) || !expected.word(i).equals(actual.word(i))
+                    || expected.line(i) != actual.line(i) || expected.offset(i) != actual.offset(i)) {
+                System.err.println("Mismatch at token " + i + ": '" + expected.word(i) + "' vs '" + actual.word(i) + "'");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void benchmarkParser(int instructions) throws Exception {
+        Lexer lexer = new Lexer();
+        lexer.tokenize(new StringReader(generateProgram(instructions)));
+        TokenBuffer tokens = lexer.getTokens();
+        System.out.println("Parsing " + tokens.size() + " tokens per round");
+
+        long steps = 0;
+        long elapsed = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            SLRParser parser = new SLRParser();
+            long start = System.nanoTime();
+            parser.parse(tokens);
+            if (round >= WARMUP_ROUNDS) {
+                elapsed += System.nanoTime() - start;
+                steps += parser.getSteps();
+            }
+        }
+        System.out.println(String.format("%-16s %,14.0f steps/sec (%,d steps per round)", "parser:",
+                steps / (elapsed / 1e9), steps / MEASURED_ROUNDS));
+    }
+
+    // Edits instruction lines and reparses after each edit, reusing the unchanged subtrees
+    private static void benchmarkIncrementalParser(int instructions) throws Exception {
+        String source = generateProgram(instructions);
+        IncrementalLexer lexer = new IncrementalLexer(source);
+        SLRParser parser = new SLRParser();
+        SyntaxTree tree = parser.parse(lexer.getTokens());
+        System.out.println("Editing a program of " + tree.size() + " syntax tree nodes");
+
+        String[] replacements = {
+            "  V_a = add ( V_b , %d ) ;",
+            "  if grt ( V_a , %d ) then begin V_b < input ; end else begin halt ; end ;",
+            "  print %d ;",
+        };
+        int warmupEdits = 50;
+        int edits = 200;
+        Random random = new Random(42);
+        long reparseTime = 0;
+        long built = 0;
+        for (int i = 0; i < warmupEdits + edits; i++) {
+            int line = 4 + random.nextInt(instructions); // An instruction line
+            lexer.replaceLines(line, 1, String.format(replacements[i % replacements.length], i));
+            TokenBuffer tokens = lexer.getTokens();
+            long start = System.nanoTime();
+            tree = parser.reparse(tree, tokens);
+            if (i >= warmupEdits) {
+                reparseTime += System.nanoTime() - start;
+                built += parser.getBuiltNodes();
+            }
+        }
+
+        TokenBuffer tokens = lexer.getTokens();
+        long fullTime = 0;
+        SyntaxTree full = null;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            full = new SLRParser().parse(tokens);
+            if (round >= WARMUP_ROUNDS) {
+                fullTime += System.nanoTime() - start;
+            }
+        }
+        System.out.println(String.format("%-16s %,10.3f ms/edit (%,.0f nodes built per edit)", "reparse:",
+                reparseTime / 1e6 / edits, (double) built / edits));
+        System.out.println(String.format("%-16s %,10.3f ms/edit", "full parse:", fullTime / 1e6 / MEASURED_ROUNDS));
+
+        // The edited tree must be exactly the tree a full parse builds, once its nodes are in parse order
+        tree.compact();
+        if (full.size() != tree.size() || full.root() != tree.root()) {
+            System.err.println("Tree size mismatch: " + full.size() + " vs " + tree.size());
+            System.exit(1);
+        }
+        for (int node = 0; node < full.size(); node++) {
+            if (full.symbol(node) != tree.symbol(node) || full.parent(node) != tree.parent(node)
+                    || full.firstChild(node) != tree.firstChild(node) || full.nextSibling(node) != tree.nextSibling(node)
+                    || full.tokenIndex(node) != tree.tokenIndex(node) || full.state(node) != tree.state(node)) {
+                System.err.println("Mismatch at node " + node + ": " + full.text(node) + " vs " + tree.text(node));
+                System.exit(1);
+            }
+        }
+    }
+
+    // Lex then parse through lexer.xml, lex then parse in memory, and lex and parse concurrently through a
+    // TokenQueue. The pipeline can at best take as long as the slower of the two phases.
+    private static void benchmarkPipeline(int instructions) throws Exception {
+        Path file = Files.createTempFile("benchmark", ".txt");
+        Path tokenFile = Files.createTempFile("benchmark", ".xml");
+        try {
+            Files.write(file, generateProgram(instructions).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Lexing and parsing " + Files.size(file) + " bytes per round");
+
+            long viaFileTime = 0;
+            long sequentialTime = 0;
+            long pipelineTime = 0;
+            long[] steps = new long[3];
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                long start = System.nanoTime();
+                Lexer lexer = new Lexer();
+                lexer.setParallelThreshold(Long.MAX_VALUE);
+                lexer.tokenizeFile(file.toString());
+                lexer.writeTokensToXML(tokenFile.toString());
+                SLRParser parser = new SLRParser();
+                parser.parseFile(tokenFile.toString());
+                steps[0] = parser.getSteps();
+                long viaFileEnd = System.nanoTime();
+
+                lexer = new Lexer();
+                lexer.setParallelThreshold(Long.MAX_VALUE);
+                lexer.tokenizeFile(file.toString());
+                parser = new SLRParser();
+                parser.parse(lexer.getTokens());
+                steps[1] = parser.getSteps();
+                long sequentialEnd = System.nanoTime();
+
+                Lexer pipelineLexer = new Lexer();
+                TokenQueue queue = new TokenQueue();
+                Thread lexerThread = new Thread(() -> pipelineLexer.tokenizeFile(file.toString(), queue), "lexer");
+                lexerThread.start();
+                parser = new SLRParser();
+                parser.parse(queue);
+                lexerThread.join();
+                steps[2] = parser.getSteps();
+                long pipelineEnd = System.nanoTime();
+
+                if (round >= WARMUP_ROUNDS) {
+                    viaFileTime += viaFileEnd - start;
+                    sequentialTime += sequentialEnd - viaFileEnd;
+                    pipelineTime += pipelineEnd - sequentialEnd;
+                }
+            }
+            System.out.println(String.format("%-16s %,10.1f ms/round", "via lexer.xml:", viaFileTime / 1e6 / MEASURED_ROUNDS));
+            System.out.println(String.format("%-16s %,10.1f ms/round", "in memory:", sequentialTime / 1e6 / MEASURED_ROUNDS));
+            System.out.println(String.format("%-16s %,10.1f ms/round", "pipeline:", pipelineTime / 1e6 / MEASURED_ROUNDS));
+            System.out.println(String.format("Speedup over lexer.xml: %.1fx (%d cores)", (double) viaFileTime / pipelineTime,
+                    Runtime.getRuntime().availableProcessors()));
+
+            if (steps[0] != steps[1] || steps[1] != steps[2]) {
+                System.err.println("Step count mismatch: " + Arrays.toString(steps));
+                System.exit(1);
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(tokenFile);
+        }
+    }
+
+    private static double measure(String name, String[] words, boolean regex) {
+        long checksum = 0;
+        long elapsed = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String word : words) {
+                TokenType type = regex ? classifyWithRegex(word) : TokenClassifier.classify(word);
+                checksum += type.ordinal();
+            }
+            if (round >= WARMUP_ROUNDS) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        double rate = (double) words.length * MEASURED_ROUNDS / (elapsed / 1e9);
+        System.out.println(String.format("%-16s %,14.0f tokens/sec (checksum %d)", name + ":", rate, checksum));
+        return rate;
+    }
+
+    private static TokenType classifyWithRegex(String word) {
+        if (word.matches(VARIABLE_REGEX)) return TokenType.V;
+        if (word.matches(FUNCTION_REGEX)) return TokenType.F;
+        if (word.matches(TEXT_REGEX)) return TokenType.T;
+        if (word.matches(NUMBER_REGEX)) return TokenType.N;
+        if (word.matches(RESERVED_KEYWORDS_REGEX)) return TokenType.RESERVED_KEYWORD;
+        if (word.matches(OPERATORS_REGEX)) return TokenType.RESERVED_KEYWORD;
+        return TokenType.INVALID;
+    }
+
+    // Builds a syntactically valid RecSPL program with the given number of instructions
+    static String generateProgram(int instructions) {
+        StringBuilder program = new StringBuilder();
+        program.append("main\n");
+        program.append("num V_a , num V_b , text V_c ,\n");
+        program.append("begin\n");
+        for (int i = 0; i < instructions; i++) {
+            switch (i % 6) {
+                case 0:
+                    program.append("  V_a = add ( V_a , ").append(i).append(" ) ;\n");
+                    break;
+                case 1:
+                    program.append("  V_b < input ;\n");
+                    break;
+                case 2:
+                    program.append("  V_c = \"t").append(i % 100).append("\" ;\n");
+                    break;
+                case 3:
+                    program.append("  if eq ( V_a , V_b ) then begin print V_a ; end else begin skip ; end ;\n");
+                    break;
+                case 4:
+                    program.append("  V_b = mul ( V_a , -2.5 ) ;\n");
+                    break;
+                default:
+                    program.append("  print V_c ;\n");
+                    break;
+            }
+        }
+        program.append("end\n");
+        program.append("num F_average ( V_x , V_y , V_z )\n");
+        program.append("{\n");
+        program.append("num V_s , num V_t , num V_u ,\n");
+        program.append("begin\n");
+        program.append("  V_s = add ( V_x , V_y ) ;\n");
+        program.append("  return V_s ;\n");
+        program.append("end\n");
+        program.append("}\n");
+        program.append("end\n");
+        return program.toString();
+    }
+}
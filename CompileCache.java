@@ -0,0 +1,284 @@
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+// Content-addressed cache of phase outputs in a directory, one file per entry. An entry is keyed by a
+// hash of the compiler version, the phase and the digests of the phase's inputs, which are the encoded
+// outputs of the phases before it. So a phase whose inputs did not change is skipped even when an
+// earlier phase ran again, e.g. the parser after a change that only moved tokens around. The compiler
+// also keeps the intermediate files it renders from an output here, keyed by that output's digest. The least
+// recently used entries are evicted once the entries take more than maxBytes. Safe to share between
+// the threads of a batch compile.
+public class CompileCache {
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    // How a phase output is stored in an entry
+    public interface Codec<T> {
+        void write(T value, OutputStream out) throws IOException;
+
+        T read(InputStream in) throws IOException;
+    }
+
+    // With their positions, so a parse of cached tokens reports the same lines as one of fresh tokens
+    public static final Codec<TokenBuffer> TOKENS = new Codec<TokenBuffer>() {
+        @Override
+        public void write(TokenBuffer tokens, OutputStream out) throws IOException {
+            TokenStreamFormat.write(tokens, out, true);
+        }
+
+        @Override
+        public TokenBuffer read(InputStream in) throws IOException {
+            return TokenStreamFormat.read(in);
+        }
+    };
+
+    public static final Codec<Symbols> SYMBOLS = new Codec<Symbols>() {
+        @Override
+        public void write(Symbols symbols, OutputStream out) throws IOException {
+            symbols.write(out);
+        }
+
+        @Override
+        public Symbols read(InputStream in) throws IOException {
+            return Symbols.read(in);
+        }
+    };
+
+    public static final Codec<List<String>> LINES = new Codec<List<String>>() {
+        @Override
+        public void write(List<String> lines, OutputStream out) throws IOException {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+
+        @Override
+        public List<String> read(InputStream in) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return reader.lines().collect(Collectors.toList());
+        }
+    };
+
+    // A tree refers to its tokens, so it is read back onto the tokens it was parsed from
+    public static Codec<SyntaxTree> tree(TokenBuffer tokens) {
+        return new Codec<SyntaxTree>() {
+            @Override
+            public void write(SyntaxTree tree, OutputStream out) throws IOException {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                tree.write(data);
+                data.flush();
+            }
+
+            @Override
+            public SyntaxTree read(InputStream in) throws IOException {
+                return SyntaxTree.read(new DataInputStream(new BufferedInputStream(in)), tokens);
+            }
+        };
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String version;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true); // Sizes, least recently used first
+    private long totalBytes = 0;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    // options are the compiler options that change what the phases produce
+    public CompileCache(Path directory, long maxBytes, String options) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        version = compilerVersion(options);
+        Files.createDirectories(directory);
+
+        // Entries left by earlier runs, in the order they were last used
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.toString().endsWith(ENTRY_SUFFIX)).collect(Collectors.toList());
+        }
+        Map<Path, FileTime> used = new HashMap<>();
+        for (Path file : files) {
+            used.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(used::get));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    public String key(String phase, String... inputDigests) {
+        MessageDigest digest = sha256();
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(phase.getBytes(StandardCharsets.UTF_8));
+        for (String input : inputDigests) {
+            digest.update((byte) 0);
+            digest.update(input.getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(digest.digest());
+    }
+
+    public static String digest(byte[] bytes) {
+        return hex(sha256().digest(bytes));
+    }
+
+    // The tokens without their positions: their IDs, types and text
+    public static String digest(TokenBuffer tokens) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TokenStreamFormat.write(tokens, out);
+        return digest(out.toByteArray());
+    }
+
+    // A phase output's bytes, or null if there is none. Counted in the hits and misses.
+    public byte[] get(String key) {
+        byte[] bytes = read(key);
+        (bytes != null ? hits : misses).incrementAndGet();
+        return bytes;
+    }
+
+    // An intermediate file's bytes, or null if there is none. Not counted, so the hits and misses stay
+    // those of the phases.
+    public byte[] getArtifact(String key) {
+        return read(key);
+    }
+
+    private byte[] read(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = entryFile(key);
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return bytes;
+        } catch (IOException e) {
+            remove(key); // Evicted meanwhile, or unreadable
+            return null;
+        }
+    }
+
+    // Entries are written to a temporary file first, so a reader never sees half an entry
+    public void put(String key, byte[] bytes) throws IOException {
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            Files.write(temporary, bytes);
+            Files.move(temporary, entryFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        synchronized (this) {
+            Long previous = entries.put(key, (long) bytes.length);
+            totalBytes += bytes.length - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            deleteEntry(key);
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> oldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            totalBytes -= entry.getValue();
+            oldest.remove();
+            deleteEntry(entry.getKey());
+        }
+    }
+
+    private void deleteEntry(String key) {
+        try {
+            Files.deleteIfExists(entryFile(key));
+        } catch (IOException e) {
+            // It no longer counts towards the size, a later put replaces it
+        }
+    }
+
+    private Path entryFile(String key) {
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    // Identifies the compiler build: its classes or jar and the parse tables it loads, so entries made by
+    // another build of the compiler are never used. The classes are in the default package, so only the
+    // .class files directly in the class directory are the compiler's. Anything else there, e.g. the cache
+    // itself or build workspaces, is left out.
+    private static String compilerVersion(String options) throws IOException {
+        MessageDigest digest = sha256();
+        Path code;
+        try {
+            code = Paths.get(CompileCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException | SecurityException e) {
+            throw new IOException("Cannot locate the compiler classes: " + e.getMessage(), e);
+        }
+        if (Files.isDirectory(code)) {
+            List<Path> classes;
+            try (Stream<Path> files = Files.list(code)) {
+                classes = files.filter(file -> file.toString().endsWith(".class") && Files.isRegularFile(file))
+                        .sorted().collect(Collectors.toList());
+            }
+            for (Path file : classes) {
+                digest.update(file.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(file));
+            }
+        } else {
+            digest.update(Files.readAllBytes(code));
+        }
+
+        // Found the way ParseTables.load finds them
+        InputStream tables = ParseTables.class.getResourceAsStream("/" + ParseTables.TABLE_FILE);
+        if (tables == null && new File(ParseTables.TABLE_FILE).exists()) {
+            tables = new FileInputStream(ParseTables.TABLE_FILE);
+        }
+        if (tables != null) {
+            try (InputStream in = tables) {
+                digest.update(in.readAllBytes());
+            }
+        }
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
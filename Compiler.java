@@ -1,136 +1,416 @@
 import java.io.*;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 
 public class Compiler {
 
     public static final String RESET = "\u001B[0m";
     public static final String GREEN = "\u001B[32m";
     public static final String RED = "\u001B[31m";
-    public static final String CYAN = "\u001B[36m";     
-    public static final String YELLOW = "\u001B[33m"; 
-    public static final String BLUE = "\u001B[34m";   
-    public static final String MAGENTA = "\u001B[35m"; 
-    public static final String LIGHT_GREEN = "\u001B[92m"; 
-    public static final String LIGHT_CYAN = "\u001B[96m"; 
-
-    public static void main(String[] args) throws IOException, InterruptedException {
+    public static final String CYAN = "\u001B[36m";
+    public static final String YELLOW = "\u001B[33m";
+    public static final String BLUE = "\u001B[34m";
+    public static final String MAGENTA = "\u001B[35m";
+    public static final String LIGHT_GREEN = "\u001B[92m";
+    public static final String LIGHT_CYAN = "\u001B[96m";
+
+    private static final String USAGE = "Usage: java Compiler [--jobs <n>] [--output <directory>] [--artifacts directory|temp|memory] [--cache <directory>] [--cache-size <megabytes>] <program-file-or-directory>...";
+    private static final String DEFAULT_OUTPUT = "build";
+    private static final String LOG_FILE = "compile.log";
+    private static final long DEFAULT_CACHE_MEGABYTES = 512;
+
+    // Runs every phase in this JVM, each on the previous phase's output in memory. The files the separate
+    // phase programs read and write are still put in an ArtifactStore for inspection, but never read back.
+    // Without arguments the compiler asks for the files and before each phase, with arguments it compiles
+    // them all in batch mode.
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            batch(args);
+            return;
+        }
         Scanner scanner = new Scanner(System.in);
 
-        
+
         System.out.print("Enter the name of the input program file (e.g., input.txt): ");
         String inputFile = scanner.nextLine();
-        
+
         System.out.print("Enter the name of the target .bas file (e.g., TargetCode.bas): ");
         String targetFile = scanner.nextLine();
 
-        // 1. Run Lexer
-        System.out.println(CYAN + "Running Lexer..." + RESET);
-        
-        if (runCommand("java Main " + inputFile, "Tokenization complete", "Invalid token encountered")) {
-            System.out.println(GREEN + "Lexer completed successfully. Output written to output.xml." + RESET);
-            System.out.println("Do you want to continue with Parser? (y/n)");
-            if (scanner.nextLine().equalsIgnoreCase("y")) {
-
-                // 2. Run Parser
-                System.out.println(YELLOW + "Running Parser..." + RESET);
-                
-                if (runCommand("java SLRParser output.xml parser.xml", "Parsing completed successfully", "Error during parsing")) {
-                    System.out.println(GREEN + "Parser completed successfully. Output written to parser.xml." + RESET);
-                    System.out.println("Do you want to continue with Scope Analyzer? (y/n)");
-
-                    if (scanner.nextLine().equalsIgnoreCase("y")) {
-
-                        // 3. Run Scope Analyzer
-                        System.out.println(BLUE + "Running Scope Analyzer..." + RESET);
-                        
-                        if (runCommand("java ScopeAnalyzer", "Symbol table has been written to Symbol.txt", "ScopeAnalyzer encountered an error")) {
-                            System.out.println(GREEN + "Scope Analyzer completed successfully." + RESET);
-                            System.out.println("Do you want to continue with Type Checker? (y/n)");
-
-                            if (scanner.nextLine().equalsIgnoreCase("y")) {
-
-                                // 4. Run Type Checker
-                                System.out.println(MAGENTA + "Running Type Checker..." + RESET);
-                                
-                                if (runCommand("java TypeChecker " + inputFile, "No type errors found", "TypeChecker encountered an error")) {
-                                    System.out.println(GREEN + "Type Checker completed successfully. No type errors found." + RESET);
-                                    System.out.println("Do you want to continue with Intermediate Code Generator? (y/n)");
-
-                                    if (scanner.nextLine().equalsIgnoreCase("y")) {
-
-                                        // 5. Run Intermediate Code Generator
-                                        System.out.println(LIGHT_GREEN + "Running Intermediate Code Generator..." + RESET);
-                                        
-                                        if (runCommand("java IntermediateCodeGenerator " + inputFile, "Generated Code", "Error during code generation")) {
-                                            System.out.println(GREEN + "Intermediate Code Generator completed successfully." + RESET);
-                                            System.out.println("Do you want to continue with Target Code Generator? (y/n)");
-
-                                            if (scanner.nextLine().equalsIgnoreCase("y")) {
-
-                                                // 6. Run Target Code Generator
-                                                System.out.println(LIGHT_CYAN + "Running Target Code Generator..." + RESET);
-                                                
-                                                if (runCommand("java TargetCode " + targetFile, "BASIC code has been written to " + targetFile, "Error during target code generation")) {
-                                                    System.out.println(GREEN + "Target Code Generation completed successfully." + RESET);
-                                                } else {
-                                                    System.err.println(RED + "Error running Target Code Generator. Please check the logs." + RESET);
-                                                }
-
-                                            }
-                                        } else {
-                                            System.err.println(RED + "Error running Intermediate Code Generator. Please check the logs." + RESET);
-                                        }
-                                    }
-                                } else {
-                                    System.err.println(RED + "Error running Type Checker. Please check the logs." + RESET);
-                                }
-                            }
-                        } else {
-                            System.err.println(RED + "Error running Scope Analyzer. Please check the logs." + RESET);
-                        }
-                    }
-                } else {
-                    System.err.println(RED + "Error running Parser. Please check the logs." + RESET);
+        new Build(new DirectoryArtifactStore(Paths.get(".")), Paths.get(targetFile), scanner).compile(inputFile);
+        scanner.close();
+    }
+
+    // Compiles every program file, and every .txt file under a directory, on a pool of jobs threads. Each
+    // program gets its own workspace under the output directory, named after its path, which holds its
+    // .bas file and compile.log with everything the phases printed for it. The intermediate files go to
+    // the workspace as well, to a temporary directory that is removed afterwards, or only to memory.
+    private static void batch(String[] args) throws IOException {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Path outputDir = Paths.get(DEFAULT_OUTPUT);
+        String artifacts = "directory";
+        Path cacheDir = null;
+        long cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+        Set<Path> inputs = new LinkedHashSet<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--jobs") && i + 1 < args.length) {
+                jobs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--output") && i + 1 < args.length) {
+                outputDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--artifacts") && i + 1 < args.length) {
+                artifacts = args[++i];
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cacheMegabytes = Long.parseLong(args[++i]);
+            } else {
+                addPrograms(Paths.get(args[i]).normalize(), inputs);
+            }
+        }
+        if (inputs.isEmpty() || jobs < 1 || !Arrays.asList("directory", "temp", "memory").contains(artifacts)) {
+            System.out.println(USAGE);
+            return;
+        }
+        // None of the batch options change what the phases produce, so only the compiler build and the
+        // programs key the cache
+        CompileCache cache = cacheDir != null ? new CompileCache(cacheDir, cacheMegabytes * 1024 * 1024, "") : null;
+
+        // The phases print as they work. Each worker's output goes to the log of the program it compiles.
+        PrintStream console = System.out;
+        PrintStream consoleErr = System.err;
+        ThreadOutput out = new ThreadOutput(console);
+        ThreadOutput err = new ThreadOutput(consoleErr);
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        long start = System.nanoTime();
+        Map<Path, Future<String>> results = new LinkedHashMap<>();
+        Path output = outputDir;
+        String store = artifacts;
+        for (Path input : inputs) {
+            results.put(input, pool.submit(() -> compileInWorkspace(input, workspaceFor(output, input), store, cache, out, err)));
+        }
+        int failed = 0;
+        try {
+            for (Map.Entry<Path, Future<String>> result : results.entrySet()) {
+                String failure;
+                try {
+                    failure = result.getValue().get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause().toString();
+                }
+                if (failure != null) {
+                    failed++;
+                    console.println(RED + "FAILED " + result.getKey() + ": " + failure + RESET);
                 }
             }
-        } else {
-            System.err.println(RED + "Error running Lexer. Please check the logs." + RESET);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+            System.setOut(console);
+            System.setErr(consoleErr);
         }
+        double seconds = (System.nanoTime() - start) / 1e9;
 
-        scanner.close();
+        console.println((failed == 0 ? GREEN : RED) + String.format(
+                "Compiled %d of %d program(s) with %d job(s) in %.2f s (%.1f programs/sec), %d failed. Output in %s",
+                inputs.size() - failed, inputs.size(), jobs, seconds, inputs.size() / seconds, failed, outputDir) + RESET);
+        if (cache != null) {
+            console.println("Cache: " + cache.getHits() + " phase(s) loaded, " + cache.getMisses() + " run");
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void addPrograms(Path path, Set<Path> inputs) throws IOException {
+        if (!Files.isDirectory(path)) {
+            inputs.add(path); // A missing file fails when its build reads it
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".txt"))
+                    .sorted()
+                    .forEach(inputs::add);
+        }
+    }
+
+    // <output>/<input path without extension>, so programs with the same name in different directories
+    // do not share a workspace
+    private static Path workspaceFor(Path outputDir, Path input) {
+        Path workspace = outputDir;
+        for (Path element : input) {
+            if (!element.toString().equals("..")) {
+                workspace = workspace.resolve(element.toString());
+            }
+        }
+        String name = workspace.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? workspace.resolveSibling(name.substring(0, dot)) : workspace;
+    }
+
+    // Returns why the program failed to compile, or null if it compiled
+    private static String compileInWorkspace(Path input, Path workspace, String artifacts, CompileCache cache,
+                                             ThreadOutput out, ThreadOutput err) throws IOException {
+        Files.createDirectories(workspace);
+        try (OutputStream log = new BufferedOutputStream(Files.newOutputStream(workspace.resolve(LOG_FILE)));
+             ArtifactStore store = artifacts.equals("memory") ? new MemoryArtifactStore()
+                     : artifacts.equals("temp") ? new TemporaryArtifactStore() : new DirectoryArtifactStore(workspace)) {
+            out.redirect(log);
+            err.redirect(log);
+            try {
+                Build build = new Build(store, workspace.resolve(workspace.getFileName() + ".bas"), null, cache);
+                build.compile(input.toString());
+                return build.failure;
+            } finally {
+                out.redirect(null);
+                err.redirect(null);
+            }
+        }
     }
 
-    public static boolean runCommand(String command, String successMessage, String errorMessage) throws IOException, InterruptedException {
-        
-        String[] commandParts = command.split(" ");
-        ProcessBuilder processBuilder = new ProcessBuilder(commandParts);
-        Process process = processBuilder.start();
-        
-        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-        String line;
-        boolean success = false;
-    
-        
-        while ((line = reader.readLine()) != null) {
-            System.out.println(line);
-            if (line.contains(successMessage)) {
-                success = true;
-            }
-        }
-    
-        // if fails
-        int exitCode = process.waitFor();
-    
-        if (exitCode != 0) {
-            while ((line = errorReader.readLine()) != null) {
-                System.err.println(line);
-                if (line.contains(errorMessage)) {
-                    success = false;
+    // One compilation, keeping its intermediate files in store. With a scanner it asks before each phase.
+    // With a cache, a phase whose inputs are in the cache is skipped and its output loaded instead.
+    private static class Build {
+        private final ArtifactStore store;
+        private final Path targetFile;
+        private final Scanner scanner;
+        private final CompileCache cache;
+        private String failure; // The phase that failed and why, null while all succeed
+        private String digest; // Digest of the last phase's encoded output, with a cache
+
+        Build(ArtifactStore store, Path targetFile, Scanner scanner) {
+            this(store, targetFile, scanner, null);
+        }
+
+        Build(ArtifactStore store, Path targetFile, Scanner scanner, CompileCache cache) {
+            this.store = store;
+            this.targetFile = targetFile;
+            this.scanner = scanner;
+            this.cache = cache;
+        }
+
+        void compile(String inputFile) {
+            try {
+                compilePhases(inputFile);
+            } catch (IOException e) {
+                failure = "Could not write output: " + e.getMessage();
+                System.err.println(RED + "Error: " + failure + RESET);
+            }
+        }
+
+        private void compilePhases(String inputFile) throws IOException {
+            byte[] sourceBytes;
+            try {
+                sourceBytes = Files.readAllBytes(Paths.get(inputFile));
+            } catch (IOException e) {
+                failure = "Could not read input file '" + inputFile + "': " + e.getMessage();
+                System.err.println(RED + "Error: " + failure + RESET);
+                return;
+            }
+            String source = new String(sourceBytes, StandardCharsets.UTF_8);
+            String sourceDigest = cache != null ? CompileCache.digest(sourceBytes) : null;
+
+            // 1. Run Lexer
+            System.out.println(CYAN + "Running Lexer..." + RESET);
+            TokenBuffer tokens = run(new Lexer(), source, CompileCache.TOKENS, sourceDigest);
+            if (tokens == null) {
+                return;
+            }
+            // The later phases only read the tokens' types and text, so they are keyed without the positions
+            // and a change that only moves tokens around does not run them again
+            String tokensDigest = cache != null ? CompileCache.digest(tokens) : null;
+            writeArtifact("lexer.xml", tokensDigest, out -> Lexer.writeTokensToXML(tokens, out));
+            System.out.println(GREEN + "Lexer completed successfully. Output written to lexer.xml." + RESET);
+            if (!proceed("Parser")) {
+                return;
+            }
+
+            // 2. Run Parser
+            System.out.println(YELLOW + "Running Parser..." + RESET);
+            SyntaxTree tree = run(new SLRParser(), tokens, CompileCache.tree(tokens), tokensDigest);
+            if (tree == null) {
+                return;
+            }
+            writeArtifact("parser.xml", digest, out -> SyntaxTreeXMLWriter.write(tree, out));
+            System.out.println(GREEN + "Parser completed successfully. Output written to parser.xml." + RESET);
+            if (!proceed("Scope Analyzer")) {
+                return;
+            }
+
+            // 3. Run Scope Analyzer
+            System.out.println(BLUE + "Running Scope Analyzer..." + RESET);
+            Symbols symbols = run(new ScopeAnalyzer(), tree, CompileCache.SYMBOLS, digest);
+            if (symbols == null) {
+                return;
+            }
+            String symbolsDigest = digest;
+            try (OutputStream out = store.create("Symbol.txt")) {
+                symbols.write(out);
+            }
+            System.out.println(GREEN + "Scope Analyzer completed successfully." + RESET);
+            if (!proceed("Type Checker")) {
+                return;
+            }
+
+            // 4. Run Type Checker
+            System.out.println(MAGENTA + "Running Type Checker..." + RESET);
+            if (run(new TypeChecker(source, tokens.lexemes()), symbols, CompileCache.SYMBOLS, symbolsDigest, sourceDigest) == null) {
+                return;
+            }
+            System.out.println(GREEN + "Type Checker completed successfully. No type errors found." + RESET);
+            if (!proceed("Intermediate Code Generator")) {
+                return;
+            }
+
+            // 5. Run Intermediate Code Generator
+            System.out.println(LIGHT_GREEN + "Running Intermediate Code Generator..." + RESET);
+            List<String> intermediateCode = run(new IntermediateCodeGenerator(tokens), symbols, CompileCache.LINES,
+                    symbolsDigest, tokensDigest);
+            if (intermediateCode == null) {
+                return;
+            }
+            store.writeLines("intermediateCode.txt", intermediateCode);
+            System.out.println(GREEN + "Intermediate Code Generator completed successfully." + RESET);
+            if (!proceed("Target Code Generator")) {
+                return;
+            }
+
+            // 6. Run Target Code Generator
+            System.out.println(LIGHT_CYAN + "Running Target Code Generator..." + RESET);
+            List<String> basicCode = run(new TargetCode(symbols), intermediateCode, CompileCache.LINES, digest,
+                    symbolsDigest);
+            if (basicCode == null) {
+                return;
+            }
+            Files.write(targetFile, basicCode);
+            System.out.println("BASIC code has been written to " + targetFile);
+            System.out.println(GREEN + "Target Code Generation completed successfully." + RESET);
+        }
+
+        private interface Render {
+            void write(OutputStream out) throws IOException;
+        }
+
+        // Writes an intermediate file to the store. With a cache, the file is rendered once for each
+        // distinct phase output and copied from the cache after that.
+        private void writeArtifact(String name, String outputDigest, Render render) throws IOException {
+            if (cache == null) {
+                try (OutputStream out = store.create(name)) {
+                    render.write(out);
+                }
+                return;
+            }
+            String key = cache.key(name, outputDigest);
+            byte[] bytes = cache.getArtifact(key);
+            if (bytes == null) {
+                ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+                render.write(rendered);
+                bytes = rendered.toByteArray();
+                cache.put(key, bytes);
+            }
+            try (OutputStream out = store.create(name)) {
+                out.write(bytes);
+            }
+        }
+
+        private boolean proceed(String phaseName) {
+            if (scanner == null) {
+                return true;
+            }
+            System.out.println("Do you want to continue with " + phaseName + "? (y/n)");
+            return scanner.nextLine().equalsIgnoreCase("y");
+        }
+
+        // As run(phase, input), through the cache. inputDigests are the digests of everything the phase
+        // reads: its input and what its constructor was given.
+        private <I, O> O run(Phase<I, O> phase, I input, CompileCache.Codec<O> codec, String... inputDigests) {
+            if (cache == null) {
+                return run(phase, input);
+            }
+            String key = cache.key(phase.name(), inputDigests);
+            byte[] entry = cache.get(key);
+            if (entry != null) {
+                try {
+                    O output = codec.read(new ByteArrayInputStream(entry));
+                    digest = CompileCache.digest(entry);
+                    System.out.println(phase.name() + " output loaded from the cache.");
+                    return output;
+                } catch (IOException e) {
+                    cache.remove(key); // Unreadable, the phase runs again and replaces it
                 }
             }
+
+            O output = run(phase, input);
+            if (output == null) {
+                return null; // Failures are not cached, the phase runs again next time
+            }
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try {
+                codec.write(output, encoded);
+                entry = encoded.toByteArray();
+                cache.put(key, entry);
+            } catch (IOException e) {
+                System.err.println("Could not cache the " + phase.name() + " output: " + e.getMessage());
+                entry = encoded.toByteArray();
+            }
+            digest = CompileCache.digest(entry);
+            return output;
+        }
+
+        // Returns the phase's output, or null after reporting why it failed
+        private <I, O> O run(Phase<I, O> phase, I input) {
+            try {
+                return phase.run(input);
+            } catch (Exception e) {
+                failure = phase.name() + ": " + e.getMessage();
+                System.err.println(RED + "Error running " + failure + RESET);
+                return null;
+            }
+        }
+    }
+
+    // Sends each thread's output to the stream it redirected to, and the output of threads that did not
+    // redirect to the console
+    private static class ThreadOutput extends OutputStream {
+        private final OutputStream console;
+        private final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+
+        ThreadOutput(OutputStream console) {
+            this.console = console;
+        }
+
+        void redirect(OutputStream out) {
+            if (out == null) {
+                target.remove();
+            } else {
+                target.set(out);
+            }
+        }
+
+        private OutputStream current() {
+            OutputStream out = target.get();
+            return out != null ? out : console;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            current().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            current().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            current().flush();
         }
-    
-        return success && exitCode == 0;
     }
 }
@@ -1,6 +1,8 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.stream.*;
 
 public class CompilerTestRunner {
     private static final String TEST_RESOURCES_DIR = "test_resources/";
@@ -9,6 +11,8 @@ public class CompilerTestRunner {
     private static final String ANSI_RED = "\u001B[31m";
     private static final String ANSI_BLUE = "\u001B[34m";
     private static final String ANSI_RESET = "\u001B[0m";
+    // Tests of single features, run after the pipeline test cases
+    private static final String[] FEATURE_TESTS = { "RecoveryDiagnostics", "ReparseMatchesFullParse", "CompileCache", "TokenFileRoundTrip" };
 
     static class TestCase {
         String name;
@@ -50,7 +54,7 @@ public class CompilerTestRunner {
         createDirectories();
         List<TestCase> testCases = createTestCases();
 
-        int totalTests = testCases.size();
+        int totalTests = testCases.size() + FEATURE_TESTS.length;
         int passedTests = 0;
 
         System.out.println(ANSI_BLUE + "\n=== Compiler Test Suite ===" + ANSI_RESET);
@@ -64,6 +68,12 @@ public class CompilerTestRunner {
             System.out.println("-".repeat(50));
         }
 
+        for (String feature : FEATURE_TESTS) {
+            if (runFeatureTest(feature))
+                passedTests++;
+            System.out.println("-".repeat(50));
+        }
+
         printSummary(totalTests, passedTests);
     }
 
@@ -120,15 +130,15 @@ public class CompilerTestRunner {
         test1.expectedParserSuccess = true;
         tests.add(test1); // Add test1 to the list
 
-        // Test Case 2: Input with lexer error (no space before semicolon)
+        // Test Case 2: Input with lexer error (upper case letter in a variable name)
         TestCase test2 = new TestCase("LexerErrorCase",
                 "main\n" +
                         "num V_x , num V_y , num V_result\n" +
                         "begin\n" +
-                        "  V_x < input;\n" + // This line causes lexer error
-                        "  V_y < input ;\n");
+                        "  V_x < input;\n" +
+                        "  V_Y < input ;\n"); // This line causes lexer error
         test2.expectedLexerSuccess = false;
-        test2.expectedLexerErrors.add("Invalid token encountered: input;");
+        test2.expectedLexerErrors.add("Invalid token encountered: V_Y");
         tests.add(test2); // Add test2 to the list
 
         // Test Case 3: Parser error case
@@ -310,7 +320,7 @@ public class CompilerTestRunner {
 
             // Write test input to file
             String inputFile = TEST_RESOURCES_DIR + test.name + "_input.txt";
-            Files.write(Paths.get(inputFile), test.inputContent.getBytes());
+            Files.write(Paths.get(inputFile), test.inputContent.getBytes(StandardCharsets.UTF_8));
 
             // Run lexer
             boolean lexerSuccess = runLexer(inputFile);
@@ -366,6 +376,215 @@ public class CompilerTestRunner {
         }
     }
 
+    private static boolean runFeatureTest(String name) {
+        System.out.println("\nTest Case: " + ANSI_BLUE + name + ANSI_RESET);
+        TestResult result;
+        try {
+            switch (name) {
+                case "RecoveryDiagnostics":
+                    result = testRecoveryDiagnostics();
+                    break;
+                case "ReparseMatchesFullParse":
+                    result = testReparseMatchesFullParse();
+                    break;
+                case "CompileCache":
+                    result = testCompileCache();
+                    break;
+                case "TokenFileRoundTrip":
+                    result = testTokenFileRoundTrip();
+                    break;
+                default:
+                    result = new TestResult(false, "Unknown feature test");
+            }
+        } catch (Exception e) {
+            result = new TestResult(false, "Threw " + e);
+        }
+        String status = result.passed ? ANSI_GREEN + "PASSED" : ANSI_RED + "FAILED";
+        System.out.println(name + ": " + status + ANSI_RESET);
+        System.out.println("  " + result.message);
+        return result.passed;
+    }
+
+    // With --recover, lexing and parsing a program with several errors reports every one of them, in order
+    private static TestResult testRecoveryDiagnostics() throws IOException, InterruptedException {
+        String inputFile = TEST_OUTPUT_DIR + "RecoveryDiagnostics_input.txt";
+        Files.write(Paths.get(inputFile), ("main\n" +
+                "num V_x , num V_y ,\n" +
+                "begin\n" +
+                "  V_x = add ( V_x 1 ) ;\n" + // Missing comma
+                "  V_Y < input ;\n" +          // Invalid token, which leaves '<' at the start of a command
+                "  print V_y ;\n" +
+                "  V_y = = 3 ;\n" +            // Duplicated '='
+                "  skip ;\n" +
+                "end\n").getBytes(StandardCharsets.UTF_8));
+        List<String> expected = Arrays.asList(
+                "Invalid token encountered: V_Y at line 5, column 3",
+                "Syntax error: expected ',' but found '1' (token 13, n) at line 4",
+                "Syntax error: expected 'end', 'skip', 'halt', 'return', 'print', 'if', a variable or a function name"
+                        + " but found '<' (token 16, reserved_keyword) at line 5",
+                "Syntax error: expected 'not', 'sqrt', 'or', 'and', 'eq', 'grt', 'add', 'sub', 'mul', 'div', a variable,"
+                        + " a function name, a number or a string but found '=' (token 24, reserved_keyword) at line 7");
+
+        ProcessBuilder processBuilder = new ProcessBuilder(
+                "java",
+                "Main",
+                "--pipeline",
+                "--recover",
+                "--output", TEST_OUTPUT_DIR + "RecoveryDiagnostics.parser.xml",
+                inputFile);
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+        String output = captureOutput(process.getInputStream());
+        int exitCode = process.waitFor();
+
+        List<String> diagnostics = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            if (line.startsWith("Invalid token") || line.startsWith("Syntax error")) {
+                diagnostics.add(line);
+            }
+        }
+        if (exitCode != 1 || !diagnostics.equals(expected)) {
+            return new TestResult(false, "Expected " + expected + " but got " + diagnostics + " (exit code " + exitCode + ")");
+        }
+        return new TestResult(true, diagnostics.size() + " diagnostics reported, as expected");
+    }
+
+    // After each edit, reparse turns the previous tree into the tree a full parse of the edited program
+    // builds, node for node, while building only part of it
+    private static TestResult testReparseMatchesFullParse() throws Exception {
+        String source = new String(Files.readAllBytes(Paths.get(TEST_RESOURCES_DIR + "FullValidProgram_input.txt")),
+                StandardCharsets.UTF_8);
+        IncrementalLexer lexer = new IncrementalLexer(source);
+        SLRParser parser = new SLRParser();
+        SyntaxTree tree = parser.parse(lexer.getTokens());
+
+        IncrementalLexer.Edit[] edits = {
+            new IncrementalLexer.Edit(4, 1, "  V_x = add ( V_x , 1 ) ;"), // Replace a command
+            new IncrementalLexer.Edit(10, 0, "      print V_x ;"),        // Insert one
+            new IncrementalLexer.Edit(9, 1, ""),                          // Delete one
+            new IncrementalLexer.Edit(31, 1, "  V_sum = sub ( V_sum , 1 ) ;"), // Inside the function
+            new IncrementalLexer.Edit(20, 2, "          if grt ( V_x , V_y ) then begin halt ; end else begin skip ; end ;"),
+        };
+        for (int i = 0; i < edits.length; i++) {
+            lexer.applyEdits(Collections.singletonList(edits[i]));
+            TokenBuffer tokens = lexer.getTokens();
+            SyntaxTree edited = parser.reparse(tree, tokens);
+            SyntaxTree full = new SLRParser().parse(tokens);
+            if (edited != tree || parser.getBuiltNodes() >= full.size()) {
+                return new TestResult(false, "Edit " + (i + 1) + " was parsed in full instead of in place");
+            }
+            edited.compact();
+            if (!sameTree(edited, full)) {
+                return new TestResult(false, "Edit " + (i + 1) + " gave a tree that differs from a full parse");
+            }
+            tree = edited;
+        }
+        return new TestResult(true, edits.length + " edits reparsed in place, each tree equal to a full parse");
+    }
+
+    private static boolean sameTree(SyntaxTree a, SyntaxTree b) {
+        if (a.size() != b.size() || a.root() != b.root()) {
+            return false;
+        }
+        for (int node = 0; node < a.size(); node++) {
+            if (a.symbol(node) != b.symbol(node) || a.parent(node) != b.parent(node)
+                    || a.firstChild(node) != b.firstChild(node) || a.nextSibling(node) != b.nextSibling(node)
+                    || a.tokenIndex(node) != b.tokenIndex(node) || a.state(node) != b.state(node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A second compile with --cache loads every phase instead of running it, and once the entries outgrow
+    // the cache the least recently used one is evicted
+    private static TestResult testCompileCache() throws IOException, InterruptedException {
+        Path cacheDir = Paths.get(TEST_OUTPUT_DIR + "cache");
+        Path buildDir = Paths.get(TEST_OUTPUT_DIR + "cache-build");
+        deleteRecursively(cacheDir);
+        deleteRecursively(buildDir);
+
+        String[] expected = { "Cache: 0 phase(s) loaded, 6 run", "Cache: 6 phase(s) loaded, 0 run" };
+        for (String summary : expected) {
+            ProcessBuilder processBuilder = new ProcessBuilder(
+                    "java",
+                    "Compiler",
+                    "--jobs", "1",
+                    "--cache", cacheDir.toString(),
+                    "--output", buildDir.toString(),
+                    TEST_RESOURCES_DIR + "FullValidProgram_input.txt");
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+            String output = captureOutput(process.getInputStream());
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || !output.contains(summary)) {
+                return new TestResult(false, "Expected \"" + summary + "\" but got (exit code " + exitCode + "):\n" + output);
+            }
+        }
+
+        Path evictionDir = Paths.get(TEST_OUTPUT_DIR + "cache-eviction");
+        deleteRecursively(evictionDir);
+        CompileCache cache = new CompileCache(evictionDir, 150, "");
+        byte[] entry = new byte[60];
+        cache.put("a", entry);
+        cache.put("b", entry);
+        cache.get("a"); // Leaves b as the least recently used
+        cache.put("c", entry);
+        if (cache.get("b") != null || cache.get("a") == null || cache.get("c") == null) {
+            return new TestResult(false, "Expected only the least recently used entry to be evicted");
+        }
+        if (cache.getHits() != 3 || cache.getMisses() != 1) {
+            return new TestResult(false, "Expected 3 hits and 1 miss but got " + cache.getHits() + " and " + cache.getMisses());
+        }
+        return new TestResult(true, "Miss then hit for every phase, least recently used entry evicted");
+    }
+
+    // A .tok file reads back the tokens it was written from: version 1 their IDs, types and text, version 2
+    // also their positions
+    private static TestResult testTokenFileRoundTrip() throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get(TEST_RESOURCES_DIR + "FullValidProgram_input.txt")),
+                StandardCharsets.UTF_8);
+        TokenBuffer tokens = new IncrementalLexer(source).getTokens();
+
+        for (boolean positions : new boolean[] { false, true }) {
+            String version = positions ? "Version 2" : "Version 1";
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TokenStreamFormat.write(tokens, out, positions);
+            TokenBuffer read = TokenStreamFormat.read(new ByteArrayInputStream(out.toByteArray()));
+            if (read.size() != tokens.size()) {
+                return new TestResult(false, version + " read back " + read.size() + " of " + tokens.size() + " tokens");
+            }
+            for (int i = 0; i < tokens.size(); i++) {
+                boolean same = read.id(i) == tokens.id(i) && read.typeOrdinal(i) == tokens.typeOrdinal(i)
+                        && read.word(i).equals(tokens.word(i));
+                if (positions) {
+                    same &= read.offset(i) == tokens.offset(i) && read.length(i) == tokens.length(i)
+                            && read.line(i) == tokens.line(i);
+                } else {
+                    same &= read.offset(i) == 0 && read.line(i) == 0; // Version 1 has no positions
+                }
+                if (!same) {
+                    return new TestResult(false, version + " read back token " + i + " as " + read.get(i)
+                            + " instead of " + tokens.get(i));
+                }
+            }
+        }
+        return new TestResult(true, tokens.size() + " tokens read back from version 1 and version 2");
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
     private static boolean runIntermediateCodeGenerator(String inputFile) {
         try {
             ProcessBuilder processBuilder = new ProcessBuilder(
@@ -0,0 +1,52 @@
+import java.io.PrintStream;
+
+// The step by step trace the parser has always printed, now only when asked for with --trace
+public class ConsoleTraceListener implements ParseListener {
+    private static final int STACK_DEPTH = 64; // Keeps the trace linear for deeply nested input
+
+    private final PrintStream out;
+
+    public ConsoleTraceListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void shift(long step, int state, String tokenValue, String tokenType, int nextState, IntStack stack) {
+        printStep(step, state, tokenValue, tokenType, "s" + nextState);
+        out.println("  Shift to state " + nextState);
+        printStack(stack);
+    }
+
+    @Override
+    public void reduce(long step, int state, String tokenValue, String tokenType, int rule, String lhs,
+                       int rhsLength, int gotoState, IntStack stack) {
+        printStep(step, state, tokenValue, tokenType, "r" + rule);
+        out.println("  Reduce using rule " + rule + ": " + lhs + " -> " + rhsLength + " symbols");
+        out.println("  Goto state " + gotoState);
+        printStack(stack);
+    }
+
+    @Override
+    public void accept(long step, int state, String tokenValue, String tokenType) {
+        printStep(step, state, tokenValue, tokenType, "acc");
+        out.println("  Accept");
+    }
+
+    @Override
+    public void error(long step, int state, String tokenValue, String tokenType, int position) {
+        printStep(step, state, tokenValue, tokenType, "\n Error: No valid action found for token '" + tokenValue
+                + "' (Type: " + tokenType + ") at position " + position + " in state " + state);
+    }
+
+    private void printStep(long step, int state, String tokenValue, String tokenType, String action) {
+        out.println("Step " + step + ":");
+        out.println("  Current state: " + state);
+        out.println("  Current token: " + tokenValue + " (Type: " + tokenType + ")");
+        out.println("  Action: " + action);
+    }
+
+    private void printStack(IntStack stack) {
+        out.println("  Stack: " + stack.toString(STACK_DEPTH));
+        out.println();
+    }
+}
@@ -0,0 +1,32 @@
+public class Diagnostic {
+    private final int line;
+    private final int column;
+    private final String message;
+
+    public Diagnostic(int line, int column, String message) {
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    // A line or column of 0 is unknown, e.g. for tokens read back from lexer.xml
+    @Override
+    public String toString() {
+        if (line == 0) {
+            return message;
+        }
+        return message + " at line " + line + (column == 0 ? "" : ", column " + column);
+    }
+}
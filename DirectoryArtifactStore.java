@@ -0,0 +1,36 @@
+import java.io.*;
+import java.nio.file.*;
+
+// Keeps the artifacts as files named after them in a directory, which is created when the first one
+// is written
+public class DirectoryArtifactStore implements ArtifactStore {
+    private final Path directory;
+
+    public DirectoryArtifactStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path path(String name) {
+        return directory.resolve(name);
+    }
+
+    @Override
+    public OutputStream create(String name) throws IOException {
+        Files.createDirectories(directory);
+        return new BufferedOutputStream(new FileOutputStream(path(name).toFile()));
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        return new BufferedInputStream(new FileInputStream(path(name).toFile()));
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return Files.isRegularFile(path(name));
+    }
+}
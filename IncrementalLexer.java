@@ -0,0 +1,207 @@
+import java.io.*;
+import java.util.*;
+
+// Keeps the tokens of every line so an editor can re-lex only the lines it changed. A token never
+// spans lines (string literals end at a newline), so each line can be lexed on its own.
+public class IncrementalLexer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final LexemeTable lexemes = new LexemeTable();
+    private final List<LineTokens> lines = new ArrayList<>();
+    private int nextId = 1;
+
+    // Replaces lineCount lines starting at firstLine (1-based) with the lines of text. Empty text is no
+    // lines, so the edit only deletes.
+    public static class Edit {
+        final int firstLine;
+        final int lineCount;
+        final String text;
+
+        public Edit(int firstLine, int lineCount, String text) {
+            this.firstLine = firstLine;
+            this.lineCount = lineCount;
+            this.text = text;
+        }
+    }
+
+    private static class LineTokens {
+        int length; // Characters on the line, without the newline
+        int count = 0;
+        int[] ids = new int[4];
+        int[] types = new int[4];
+        int[] lexemeIds = new int[4];
+        int[] columns = new int[4];
+        int[] lengths = new int[4];
+        List<Diagnostic> invalid; // Line numbers are filled in when the diagnostics are requested
+
+        void add(TokenType type, int lexemeId, int column, int length) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                types = Arrays.copyOf(types, count * 2);
+                lexemeIds = Arrays.copyOf(lexemeIds, count * 2);
+                columns = Arrays.copyOf(columns, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            types[count] = type.ordinal();
+            lexemeIds[count] = lexemeId;
+            columns[count] = column;
+            lengths[count] = length;
+            count++;
+        }
+    }
+
+    public IncrementalLexer(String source) throws IOException {
+        lines.addAll(lexLines(source));
+        for (LineTokens line : lines) {
+            for (int i = 0; i < line.count; i++) {
+                line.ids[i] = nextId++;
+            }
+        }
+    }
+
+    public void replaceLines(int firstLine, int lineCount, String text) throws IOException {
+        if (firstLine < 1 || lineCount < 0 || firstLine - 1 + lineCount > lines.size()) {
+            throw new IllegalArgumentException("Invalid line range " + firstLine + "+" + lineCount
+                    + " for " + lines.size() + " lines");
+        }
+        List<LineTokens> replaced = lines.subList(firstLine - 1, firstLine - 1 + lineCount);
+        List<LineTokens> relexed = text.isEmpty() ? new ArrayList<>() : lexLines(text); // lexLines("") is one empty line
+        reuseIds(replaced, relexed);
+        replaced.clear();
+        lines.addAll(firstLine - 1, relexed);
+    }
+
+    // Applies edits given in line numbers of the current text. They are applied bottom up, so an edit
+    // never moves the lines of the edits still to come.
+    public void applyEdits(List<Edit> edits) throws IOException {
+        List<Edit> sorted = new ArrayList<>(edits);
+        sorted.sort((a, b) -> Integer.compare(b.firstLine, a.firstLine));
+        for (int i = 1; i < sorted.size(); i++) {
+            Edit edit = sorted.get(i);
+            if (edit.firstLine + edit.lineCount > sorted.get(i - 1).firstLine) {
+                throw new IllegalArgumentException("Overlapping edits at line " + edit.firstLine);
+            }
+        }
+        for (Edit edit : sorted) {
+            replaceLines(edit.firstLine, edit.lineCount, edit.text);
+        }
+    }
+
+    public int getLineCount() {
+        return lines.size();
+    }
+
+    // The current token stream. Tokens keep their IDs across edits unless they were changed.
+    public TokenBuffer getTokens() {
+        TokenBuffer tokens = new TokenBuffer(lexemes);
+        int lineStart = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            LineTokens line = lines.get(l);
+            for (int i = 0; i < line.count; i++) {
+                tokens.add(line.ids[i], TYPES[line.types[i]], line.lexemeIds[i],
+                        lineStart + line.columns[i] - 1, line.lengths[i], l + 1);
+            }
+            lineStart += line.length + 1;
+        }
+        return tokens;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        for (int l = 0; l < lines.size(); l++) {
+            LineTokens line = lines.get(l);
+            if (line.invalid != null) {
+                for (Diagnostic invalid : line.invalid) {
+                    diagnostics.add(new Diagnostic(l + 1, invalid.getColumn(), invalid.getMessage()));
+                }
+            }
+        }
+        return diagnostics;
+    }
+
+    private List<LineTokens> lexLines(String text) throws IOException {
+        List<LineTokens> result = new ArrayList<>();
+        int start = 0;
+        int newline;
+        while ((newline = text.indexOf('\n', start)) >= 0) {
+            LineTokens line = new LineTokens();
+            line.length = newline - start;
+            result.add(line);
+            start = newline + 1;
+        }
+        LineTokens last = new LineTokens();
+        last.length = text.length() - start;
+        result.add(last);
+
+        TokenScanner scanner = new TokenScanner(new StringReader(text));
+        while (scanner.next()) {
+            LineTokens line = result.get(scanner.line() - 1);
+            if (scanner.type() != TokenType.INVALID) {
+                line.add(scanner.type(), lexemes.intern(scanner.lexeme()), scanner.column(), scanner.length());
+            } else {
+                if (line.invalid == null) {
+                    line.invalid = new ArrayList<>();
+                }
+                line.invalid.add(new Diagnostic(0, scanner.column(), "Invalid token encountered: " + scanner.word()));
+            }
+        }
+        return result;
+    }
+
+    // Tokens that match at the start or the end of the replaced range keep their old IDs, the
+    // rest get new ones
+    private void reuseIds(List<LineTokens> oldLines, List<LineTokens> newLines) {
+        int[][] oldTokens = flatten(oldLines);
+        int[][] newTokens = flatten(newLines);
+        int oldCount = oldTokens[0].length;
+        int newCount = newTokens[0].length;
+
+        int prefix = 0;
+        while (prefix < oldCount && prefix < newCount && sameToken(oldLines, oldTokens, prefix, newLines, newTokens, prefix)) {
+            token(newLines, newTokens, prefix).ids[newTokens[1][prefix]] = token(oldLines, oldTokens, prefix).ids[oldTokens[1][prefix]];
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < oldCount - prefix && suffix < newCount - prefix
+                && sameToken(oldLines, oldTokens, oldCount - 1 - suffix, newLines, newTokens, newCount - 1 - suffix)) {
+            int o = oldCount - 1 - suffix;
+            int n = newCount - 1 - suffix;
+            token(newLines, newTokens, n).ids[newTokens[1][n]] = token(oldLines, oldTokens, o).ids[oldTokens[1][o]];
+            suffix++;
+        }
+        for (int n = prefix; n < newCount - suffix; n++) {
+            token(newLines, newTokens, n).ids[newTokens[1][n]] = nextId++;
+        }
+    }
+
+    // Every token of the lines as a (line index, token index) pair
+    private static int[][] flatten(List<LineTokens> lines) {
+        int total = 0;
+        for (LineTokens line : lines) {
+            total += line.count;
+        }
+        int[][] tokens = new int[2][total];
+        int k = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            for (int i = 0; i < lines.get(l).count; i++) {
+                tokens[0][k] = l;
+                tokens[1][k] = i;
+                k++;
+            }
+        }
+        return tokens;
+    }
+
+    private static LineTokens token(List<LineTokens> lines, int[][] tokens, int k) {
+        return lines.get(tokens[0][k]);
+    }
+
+    private static boolean sameToken(List<LineTokens> oldLines, int[][] oldTokens, int o,
+                                     List<LineTokens> newLines, int[][] newTokens, int n) {
+        LineTokens oldLine = token(oldLines, oldTokens, o);
+        LineTokens newLine = token(newLines, newTokens, n);
+        int i = oldTokens[1][o];
+        int j = newTokens[1][n];
+        return oldLine.types[i] == newLine.types[j] && oldLine.lexemeIds[i] == newLine.lexemeIds[j];
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.Arrays;
+
+// Growable stack of primitive ints, so pushing a parser state neither boxes nor synchronizes
+public class IntStack {
+    private int[] values;
+    private int size = 0;
+
+    public IntStack() {
+        this(64);
+    }
+
+    public IntStack(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void push(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int pop() {
+        return values[--size];
+    }
+
+    // Drops the top count values at once, as a reduce does
+    public void pop(int count) {
+        size -= count;
+    }
+
+    public int peek() {
+        return values[size - 1];
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Same format as java.util.Stack, e.g. [0, 2, 4]
+    @Override
+    public String toString() {
+        return toString(size);
+    }
+
+    // Only the top limit values, e.g. [..., 2, 4] for a limit of 2
+    public String toString(int limit) {
+        StringBuilder builder = new StringBuilder("[");
+        int start = Math.max(0, size - limit);
+        if (start > 0) {
+            builder.append("...");
+        }
+        for (int i = start; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(values[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
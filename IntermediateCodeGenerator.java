@@ -1,13 +1,15 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-public class IntermediateCodeGenerator {
-    private static Map<String, String> symbolTable = new HashMap<>();
-    private static List<String> tokens = new ArrayList<>();
-    private static int currentToken = 0;
-    private static int tempCounter = 1;
-    private static int labelCounter = 1;
-    private static List<String> code = new ArrayList<>();
+public class IntermediateCodeGenerator implements Phase<Symbols, List<String>> {
+    private Map<String, String> symbolTable = new HashMap<>();
+    private TokenBuffer tokens = new TokenBuffer();
+    private String[] translations = new String[0]; // Symbol table indexed by lexeme ID
+    private int currentToken = 0;
+    private int tempCounter = 1;
+    private int labelCounter = 1;
+    private List<String> code = new ArrayList<>();
     private static final String SYMBOL_FILE = "Symbol.txt";
     private static final String OUTPUT_FILE = "intermediateCode.txt";
 
@@ -21,13 +23,40 @@ public class IntermediateCodeGenerator {
         }
     }
 
+    public IntermediateCodeGenerator() {
+    }
+
+    // As a phase, the code is generated from the tokens the lexer phase already produced
+    public IntermediateCodeGenerator(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public String name() {
+        return "Intermediate Code Generator";
+    }
+
+    @Override
+    public List<String> run(Symbols symbols) {
+        for (int i = 0; i < symbols.size(); i++) {
+            addSymbol(symbols.name(i), symbols.uniqueName(i));
+        }
+        resolveTokens();
+        parseProg();
+        return generatedLines();
+    }
+
+    // Usage: java IntermediateCodeGenerator [--workspace <directory>] <input-file>. Symbol.txt is read from and
+    // intermediateCode.txt written to the workspace, by default the current directory.
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java IntermediateCodeGenerator <input-file>");
+        List<String> files = new ArrayList<>(Arrays.asList(args));
+        ArtifactStore workspace = ArtifactStore.workspace(files);
+        if (files.size() != 1) {
+            System.err.println("Usage: java IntermediateCodeGenerator [--workspace <directory>] <input-file>");
             System.exit(1);
         }
 
-        String inputFile = args[0];
+        String inputFile = files.get(0);
 
         // Verify input file exists
         if (!new File(inputFile).exists()) {
@@ -35,20 +64,21 @@ public class IntermediateCodeGenerator {
             System.exit(1);
         }
 
+        IntermediateCodeGenerator generator = new IntermediateCodeGenerator();
         try {
             // Load symbol table first
             try {
-                loadSymbolTable(SYMBOL_FILE);
+                generator.loadSymbolTable(workspace, SYMBOL_FILE);
             } catch (IOException e) {
                 System.err.println("Error: Could not read symbol table file '" + SYMBOL_FILE + "'");
-                System.err.println("Make sure " + SYMBOL_FILE + " exists in the current directory");
+                System.err.println("Make sure " + SYMBOL_FILE + " exists in the workspace directory");
                 System.exit(1);
             }
 
             // Read and process input file
             String input;
             try {
-                input = readInputFile(inputFile);
+                input = generator.readInputFile(inputFile);
             } catch (IOException e) {
                 System.err.println("Error reading input file: " + e.getMessage());
                 System.exit(1);
@@ -56,14 +86,14 @@ public class IntermediateCodeGenerator {
             }
 
             // Generate code
-            tokenize(input);
-            parseProg();
+            generator.tokenize(input);
+            generator.parseProg();
 
             // Write output
             try {
-                writeOutput(OUTPUT_FILE);
+                workspace.writeLines(OUTPUT_FILE, generator.generatedLines());
                 System.out.println("Code generated successfully to " + OUTPUT_FILE);
-                printGeneratedCode();
+                generator.printGeneratedCode();
             } catch (IOException e) {
                 System.err.println("Error writing output file: " + e.getMessage());
                 System.exit(1);
@@ -75,7 +105,7 @@ public class IntermediateCodeGenerator {
         }
     }
 
-    private static void parseReturnStatement() {
+    private void parseReturnStatement() {
         advance(); // Skip return
         // Expression returnExp = parseExpression();
         StringBuilder returnCode = new StringBuilder();
@@ -88,7 +118,7 @@ public class IntermediateCodeGenerator {
         }
     }
 
-    private static void parsePrintStatement() {
+    private void parsePrintStatement() {
         advance(); // Skip return
         // Expression returnExp = parseExpression();
         StringBuilder returnCode = new StringBuilder();
@@ -101,7 +131,7 @@ public class IntermediateCodeGenerator {
         }
     }
 
-    private static String parseStatement() {
+    private String parseStatement() {
         String token = getCurrentToken();
         StringBuilder statement = new StringBuilder();
         System.out.println("Parsing statement: " + token);
@@ -151,9 +181,9 @@ public class IntermediateCodeGenerator {
         return statement.toString();
     }
 
-    private static String parseAssignment() {
+    private String parseAssignment() {
         StringBuilder assignCode = new StringBuilder();
-        String varName = translateVar(getCurrentToken());
+        String varName = translateVar(currentLexemeId());
         advance();
         String nextToken = getCurrentToken();
 
@@ -178,7 +208,7 @@ public class IntermediateCodeGenerator {
         return assignCode.toString();
     }
 
-    private static String parseIfStatement() {
+    private String parseIfStatement() {
         StringBuilder ifCode = new StringBuilder();
         advance(); // Skip if
         Expression conditionExp = parseExpression();
@@ -276,33 +306,28 @@ public class IntermediateCodeGenerator {
     // code.add(labelEnd + ":");
     // }
 
-    private static void printGeneratedCode() {
+    private void printGeneratedCode() {
         System.out.println("\nGenerated Code:");
-        for (String line : code) {
-            // Split the code into lines and print each line separately
-            for (String subline : line.split("\n")) {
-                if (!subline.trim().isEmpty()) {
-                    System.out.println(subline.trim());
-                }
-            }
+        for (String line : generatedLines()) {
+            System.out.println(line);
         }
     }
 
-    private static void writeOutput(String filename) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            for (String line : code) {
-                // Split the code into lines and write each line separately
-                for (String subline : line.split("\n")) {
-                    if (!subline.trim().isEmpty()) {
-                        writer.write(subline.trim());
-                        writer.newLine();
-                    }
+    // The generated code as intermediateCode.txt holds it, one instruction per line
+    private List<String> generatedLines() {
+        List<String> lines = new ArrayList<>();
+        for (String line : code) {
+            // Split the code into lines and keep each line separately
+            for (String subline : line.split("\n")) {
+                if (!subline.trim().isEmpty()) {
+                    lines.add(subline.trim());
                 }
             }
         }
+        return lines;
     }
 
-    private static Expression parseExpression() {
+    private Expression parseExpression() {
     String token = getCurrentToken();
     System.out.println("DEBUG: parseExpression - Starting with token: " + token);
 
@@ -359,7 +384,7 @@ public class IntermediateCodeGenerator {
             }
         }
     } else if (token.startsWith("F_")) {
-        String fnName = translateVar(token);
+        String fnName = translateVar(currentLexemeId());
         advance(); // Skip function name
         advance(); // Skip (
         List<String> params = new ArrayList<>();
@@ -378,8 +403,9 @@ public class IntermediateCodeGenerator {
         System.out.println("DEBUG: Function call generated: " + callCode);
         return new Expression(callCode, resultPlace);
     } else if (token.startsWith("V_")) {
+        String varName = translateVar(currentLexemeId());
         advance(); 
-        return new Expression("", translateVar(token));
+        return new Expression("", varName);
     } else {
         advance(); 
         return new Expression("", token); 
@@ -389,7 +415,7 @@ public class IntermediateCodeGenerator {
 
 
 
-    private static String translateOperator(String op) {
+    private String translateOperator(String op) {
         return switch (op) {
             case "add" -> "+";
             case "sub" -> "-";
@@ -405,22 +431,27 @@ public class IntermediateCodeGenerator {
         };
     }
 
-    private static String translateVar(String varName) {
-        return symbolTable.getOrDefault(varName.trim(), varName.trim());
+    // A token that is not a symbol translates to itself
+    private String translateVar(int lexemeId) {
+        if (lexemeId < 0) {
+            return "EOF";
+        }
+        String translation = translations[lexemeId];
+        return translation != null ? translation : tokens.lexemes().get(lexemeId);
     }
 
-    private static boolean isOperator(String token) {
+    private boolean isOperator(String token) {
         return token.equals("and") || token.equals("or") || token.equals("eq") ||
                 token.equals("grt") || token.equals("add") || token.equals("sub") ||
                 token.equals("mul") || token.equals("div") || token.equals("not") ||
                 token.equals("sqrt");
     }
 
-    private static boolean isEOF() {
+    private boolean isEOF() {
         return currentToken >= tokens.size();
     }
 
-    private static void parseProg() {
+    private void parseProg() {
         StringBuilder mainCode = new StringBuilder();
         StringBuilder functionCode = new StringBuilder();
 
@@ -456,12 +487,12 @@ public class IntermediateCodeGenerator {
         }
     }
 
-    private static String parseFunctionDeclaration() {
+    private String parseFunctionDeclaration() {
         StringBuilder funcCode = new StringBuilder();
         advance(); // Skip num/void
 
         // Get function name and parameters (HEADER)
-        String funcName = translateVar(getCurrentToken());
+        String funcName = translateVar(currentLexemeId());
         advance(); // Skip function name
         advance(); // Skip (
 
@@ -469,7 +500,7 @@ public class IntermediateCodeGenerator {
         for (int i = 0; i < 3; i++) {
             if (i > 0)
                 advance(); // Skip comma
-            params.add(translateVar(getCurrentToken()));
+            params.add(translateVar(currentLexemeId()));
             advance();
         }
 
@@ -496,7 +527,7 @@ public class IntermediateCodeGenerator {
 
         return funcCode.toString();
     }
-    private static String parseFunctions() {
+    private String parseFunctions() {
         StringBuilder functionCode = new StringBuilder();
         while (!isEOF()) {
             String token = getCurrentToken();
@@ -508,9 +539,9 @@ public class IntermediateCodeGenerator {
         return functionCode.toString();
     }
 
-    private static String parseFunction() {
+    private String parseFunction() {
         StringBuilder funcCode = new StringBuilder();
-        String funcName = translateVar(getCurrentToken());
+        String funcName = translateVar(currentLexemeId());
         advance(); // Skip function name
 
         // Skip parameters and type declarations until begin
@@ -528,7 +559,7 @@ public class IntermediateCodeGenerator {
         return funcCode.toString();
     }
 
-    private static String parseCommand() {
+    private String parseCommand() {
         String token = getCurrentToken();
         switch (token) {
             case "skip":
@@ -560,8 +591,8 @@ public class IntermediateCodeGenerator {
         }
     }
 
-    private static String parseAssign() {
-        String varName = translateVar(getCurrentToken());
+    private String parseAssign() {
+        String varName = translateVar(currentLexemeId());
         advance();
         String token = getCurrentToken();
 
@@ -588,7 +619,7 @@ public class IntermediateCodeGenerator {
         return "";
     }
 
-    private static Expression parseCondition() {
+    private Expression parseCondition() {
         if (getCurrentToken().equals("not")) {
             return parseUnaryOp();
         } else if (isBinaryOp(getCurrentToken())) {
@@ -597,7 +628,7 @@ public class IntermediateCodeGenerator {
         return parseExpression();
     }
 
-    private static String parseBranch() {
+    private String parseBranch() {
         advance(); // Skip if
         Expression cond = parseCondition();
         String labelTrue = "L" + labelCounter++;
@@ -650,35 +681,46 @@ public class IntermediateCodeGenerator {
         return branchCode.toString();
     }
 
-    // Update tokenize method to handle all tokens properly
-    private static void tokenize(String input) {
-        String processed = input.replaceAll("([(){},;])", " $1 ")
-                .replaceAll("<", " < ")
-                .replaceAll("=", " = ")
-                .replaceAll("\"([^\"]*)\"", " \"$1\" ")
-                .replaceAll("\n", " ")
-                .trim();
-
-        tokens = new ArrayList<>();
-        for (String token : processed.split("\\s+")) {
-            if (!token.isEmpty()) {
-                tokens.add(token);
-                System.out.println("Added token: " + token);
+    // Uses the compiler's own Lexer so this phase sees exactly the tokens the parser saw
+    private void tokenize(String input) throws IOException {
+        Lexer lexer = new Lexer();
+        lexer.tokenize(new StringReader(input));
+        tokens = lexer.getTokens();
+        resolveTokens();
+    }
+
+    private void resolveTokens() {
+        for (int i = 0; i < tokens.size(); i++) {
+            System.out.println("Added token: " + tokens.word(i));
+        }
+
+        // Resolve every symbol once, so translating a token is an array lookup by its lexeme ID
+        LexemeTable lexemes = tokens.lexemes();
+        translations = new String[lexemes.size()];
+        for (Map.Entry<String, String> entry : symbolTable.entrySet()) {
+            int id = lexemes.find(entry.getKey());
+            if (id >= 0) {
+                translations[id] = entry.getValue();
             }
         }
     }
 
-    private static String getCurrentToken() {
-        return currentToken < tokens.size() ? tokens.get(currentToken) : "EOF";
+    private String getCurrentToken() {
+        return currentToken < tokens.size() ? tokens.word(currentToken) : "EOF";
+    }
+
+    // The lexeme ID of the current token, or -1 at the end
+    private int currentLexemeId() {
+        return currentToken < tokens.size() ? tokens.lexemeId(currentToken) : -1;
     }
 
-    private static void advance() {
+    private void advance() {
         if (currentToken < tokens.size()) {
             currentToken++;
         }
     }
 
-    private static String parseAlgo() {
+    private String parseAlgo() {
         StringBuilder algoCode = new StringBuilder();
         while (!getCurrentToken().equals("end") && !isEOF()) {
             algoCode.append(parseInstruc());
@@ -687,7 +729,7 @@ public class IntermediateCodeGenerator {
         return algoCode.toString();
     }
 
-    private static String parseMainBlock() {
+    private String parseMainBlock() {
         StringBuilder mainCode = new StringBuilder();
         while (!getCurrentToken().equals("end") && !isEOF()) {
             if (getCurrentToken().equals("begin")) {
@@ -703,12 +745,11 @@ public class IntermediateCodeGenerator {
         return mainCode.toString();
     }
 
-    private static String parseFunctionBlock() {
+    private String parseFunctionBlock() {
         StringBuilder funcCode = new StringBuilder();
         advance(); // Skip num/void
 
-        String funcName = getCurrentToken();
-        String translatedName = translateVar(funcName);
+        String translatedName = translateVar(currentLexemeId());
         System.out.println("DEBUG: Processing function: " + translatedName);
 
         advance(); // Skip function name
@@ -719,7 +760,7 @@ public class IntermediateCodeGenerator {
         for (int i = 0; i < 3; i++) {
             if (i > 0)
                 advance(); // Skip comma
-            params.add(translateVar(getCurrentToken()));
+            params.add(translateVar(currentLexemeId()));
             advance();
         }
 
@@ -746,10 +787,10 @@ public class IntermediateCodeGenerator {
         return funcCode.toString();
     }
 
-    private static String handleFunctionDeclaration(String funcName) {
+    private String handleFunctionDeclaration(int funcName) {
         StringBuilder funcCode = new StringBuilder();
         String fName = translateVar(funcName);
-        System.out.println("DEBUG: Translating function: " + funcName + " to " + fName);
+        System.out.println("DEBUG: Translating function: " + tokens.lexemes().get(funcName) + " to " + fName);
 
         // Build function header
         funcCode.append("\n").append(fName).append(" ");
@@ -761,7 +802,7 @@ public class IntermediateCodeGenerator {
             if (i > 0) {
                 advance(); // Skip comma
             }
-            String param = translateVar(getCurrentToken());
+            String param = translateVar(currentLexemeId());
             params.add(param);
             advance();
         }
@@ -784,14 +825,14 @@ public class IntermediateCodeGenerator {
     }
 
     // Helper method to peek next token
-    private static String peekNextToken() {
+    private String peekNextToken() {
         if (currentToken + 1 < tokens.size()) {
-            return tokens.get(currentToken + 1);
+            return tokens.word(currentToken + 1);
         }
         return "EOF";
     }
 
-    private static String parseInstruc() {
+    private String parseInstruc() {
         String commandCode = parseCommand();
         if (getCurrentToken().equals(";")) {
             advance();
@@ -801,7 +842,7 @@ public class IntermediateCodeGenerator {
         return commandCode;
     }
 
-    private static Expression parseUnaryOp() {
+    private Expression parseUnaryOp() {
         String op = getCurrentToken();
         advance(); // Skip operator
         advance(); // Skip (
@@ -816,7 +857,7 @@ public class IntermediateCodeGenerator {
                 place);
     }
 
-    private static Expression parseBinaryOp() {
+    private Expression parseBinaryOp() {
         String op = getCurrentToken();
         System.out.println("DEBUG: parseBinaryOp - operator: " + op);
         advance(); // Skip operator
@@ -875,8 +916,8 @@ public class IntermediateCodeGenerator {
         return new Expression(codeBuilder.toString(), resultPlace);
     }
 
-    private static void parseAssignmentOrInput() {
-        String varName = translateVar(getCurrentToken());
+    private void parseAssignmentOrInput() {
+        String varName = translateVar(currentLexemeId());
         advance();
         String nextToken = getCurrentToken();
         System.out.println("Processing assignment: " + varName + " " + nextToken);
@@ -912,8 +953,8 @@ public class IntermediateCodeGenerator {
         }
     }
 
-    private static String parseCall() {
-        String fnName = translateVar(getCurrentToken());
+    private String parseCall() {
+        String fnName = translateVar(currentLexemeId());
         advance(); // Skip function name
         advance(); // Skip (
 
@@ -932,31 +973,35 @@ public class IntermediateCodeGenerator {
     }
 
     // Helper methods
-    private static boolean isUnaryOp(String token) {
+    private boolean isUnaryOp(String token) {
         return token.equals("not") || token.equals("sqrt");
     }
 
-    private static boolean isBinaryOp(String token) {
+    private boolean isBinaryOp(String token) {
         return token.equals("and") || token.equals("or") || token.equals("eq") ||
                 token.equals("grt") || token.equals("add") || token.equals("sub") ||
                 token.equals("mul") || token.equals("div");
     }
 
-    private static void loadSymbolTable(String filename) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(filename));
+    private void loadSymbolTable(ArtifactStore workspace, String filename) throws IOException {
+        BufferedReader reader = workspace.reader(filename);
         String line;
         while ((line = reader.readLine()) != null) {
             String[] parts = line.split(":");
             if (parts.length >= 2) {
-                symbolTable.put(parts[0].trim(), parts[1].trim());
-                System.out.println("Loaded symbol: " + parts[0].trim() + " -> " + parts[1].trim());
+                addSymbol(parts[0].trim(), parts[1].trim());
             }
         }
         reader.close();
     }
 
-    private static String readInputFile(String filename) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(filename));
+    private void addSymbol(String name, String uniqueName) {
+        symbolTable.put(name, uniqueName);
+        System.out.println("Loaded symbol: " + name + " -> " + uniqueName);
+    }
+
+    private String readInputFile(String filename) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(filename, StandardCharsets.UTF_8));
         StringBuilder sb = new StringBuilder();
         String line;
         while ((line = reader.readLine()) != null) {
@@ -966,7 +1011,7 @@ public class IntermediateCodeGenerator {
         return sb.toString();
     }
 
-    private static void generateCode() {
+    private void generateCode() {
         // Skip until main
         while (!getCurrentToken().equals("main") && !getCurrentToken().equals("EOF")) {
             advance();
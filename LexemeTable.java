@@ -0,0 +1,141 @@
+import java.util.Arrays;
+
+public class LexemeTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Keywords and operators are pre-seeded in this order, so their IDs are the same in every table
+    public static final int MAIN = 0;
+    public static final int BEGIN = 1;
+    public static final int END = 2;
+    public static final int SKIP = 3;
+    public static final int HALT = 4;
+    public static final int RETURN = 5;
+    public static final int PRINT = 6;
+    public static final int IF = 7;
+    public static final int THEN = 8;
+    public static final int ELSE = 9;
+    public static final int INPUT = 10;
+    public static final int NUM = 11;
+    public static final int TEXT = 12;
+    public static final int VOID = 13;
+    public static final int NOT = 14;
+    public static final int SQRT = 15;
+    public static final int OR = 16;
+    public static final int AND = 17;
+    public static final int EQ = 18;
+    public static final int GRT = 19;
+    public static final int ADD = 20;
+    public static final int SUB = 21;
+    public static final int MUL = 22;
+    public static final int DIV = 23;
+    public static final int ASSIGN = 24;
+    public static final int PLUS = 25;
+    public static final int MINUS = 26;
+    public static final int TIMES = 27;
+    public static final int SLASH = 28;
+    public static final int LESS = 29;
+    public static final int GREATER = 30;
+    public static final int BANG = 31;
+    public static final int SEMICOLON = 32;
+    public static final int COMMA = 33;
+    public static final int DOLLAR = 34;
+    public static final int LPAREN = 35;
+    public static final int RPAREN = 36;
+    public static final int LBRACE = 37;
+    public static final int RBRACE = 38;
+    public static final int LST = 39; // How lexer.xml spells "<"
+
+    private static final String[] RESERVED = {
+        "main", "begin", "end", "skip", "halt", "return", "print", "if", "then", "else", "input",
+        "num", "text", "void", "not", "sqrt", "or", "and", "eq", "grt", "add", "sub", "mul", "div",
+        "=", "+", "-", "*", "/", "<", ">", "!", ";", ",", "$", "(", ")", "{", "}", "lst"
+    };
+    public static final int RESERVED_COUNT = RESERVED.length;
+
+    // Open addressing table of lexeme IDs (stored +1 so that 0 means empty)
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private String[] lexemes = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public LexemeTable() {
+        for (String reserved : RESERVED) {
+            intern(reserved);
+        }
+    }
+
+    public static boolean isReserved(int id) {
+        return id >= 0 && id < RESERVED_COUNT;
+    }
+
+    // Returns the ID of the lexeme, adding it if it has not been seen before. Looking up a known
+    // lexeme does not allocate, so the lexer can pass its reusable scan buffer.
+    public int intern(CharSequence text) {
+        int hash = hash(text);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && lexemes[id].contentEquals(text)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == lexemes.length) {
+            lexemes = Arrays.copyOf(lexemes, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        lexemes[id] = text.toString();
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    // Returns the ID of the lexeme, or -1 if it has never been interned
+    public int find(CharSequence text) {
+        int hash = hash(text);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && lexemes[id].contentEquals(text)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String get(int id) {
+        return lexemes[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(CharSequence text) {
+        int hash = 0;
+        for (int i = 0; i < text.length(); i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
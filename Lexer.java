@@ -1,61 +1,341 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import javax.xml.stream.*;
 
-public class Lexer {
-    private List<Token> tokens = new ArrayList<>();
+public class Lexer implements Phase<String, TokenBuffer> {
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private static final String[] CLASS_NAMES = new String[TokenType.values().length];
+
+    static {
+        for (TokenType type : TokenType.values()) {
+            CLASS_NAMES[type.ordinal()] = type.toString().toLowerCase();
+        }
+    }
+
+    private TokenBuffer tokens = new TokenBuffer();
     private int tokenId = 1;
+    private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private boolean recover = false;
+    private List<Diagnostic> diagnostics = new ArrayList<>();
+
+    // Files at least this many bytes long are lexed in parallel chunks
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    // In recovery mode an invalid token is recorded as a diagnostic and lexing resumes at the next
+    // whitespace. Otherwise the first invalid token throws a LexerException.
+    public void setRecover(boolean recover) {
+        this.recover = recover;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    @Override
+    public String name() {
+        return "Lexer";
+    }
+
+    // Lexes the program text. In recovery mode the invalid tokens are in getDiagnostics() afterwards.
+    @Override
+    public TokenBuffer run(String source) throws IOException {
+        tokenize(new StringReader(source));
+        return tokens;
+    }
 
-    private static final String VARIABLE_REGEX = "V_[a-z]([a-z]|[0-9])*";
-    private static final String FUNCTION_REGEX = "F_[a-z]([a-z]|[0-9])*";
-    private static final String TEXT_REGEX = "\"[^\"]*\"";
-    private static final String NUMBER_REGEX = "-?\\d+(\\.\\d+)?";
-    private static final String RESERVED_KEYWORDS_REGEX = "\\b(main|begin|end|skip|halt|return|print|if|then|else|input|num|text|void|not|sqrt|or|and|eq|grt|add|sub|mul|div)\\b";
-    private static final String OPERATORS_REGEX = "[=+\\-*/<>!;,\\$\\(\\){}]";
-    
     public void tokenizeFile(String filePath) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            tokenizeLine(line);
+        if (Files.size(Paths.get(filePath)) >= parallelThreshold) {
+            tokenizeParallel(filePath);
+            return;
+        }
+        try (Reader reader = new FileReader(filePath, StandardCharsets.UTF_8)) {
+            tokenize(reader);
         }
-        reader.close();
     }
 
-    private void tokenizeLine(String line) {
-        String[] words = line.trim().split("\\s+"); // Split by whitespace but ignore extra spaces
-        for (String word : words) {
-            if (word.isEmpty()) continue; // Skip empty tokens that might occur due to extra spaces
-            TokenType type = identifyTokenType(word);
-            if (type != TokenType.INVALID) {
-                tokens.add(new Token(tokenId++, type, word));
+    // Token boundaries come from the characters themselves, so "V_a=5;" and "V_a = 5 ;" lex the same
+    public void tokenize(Reader reader) throws IOException {
+        TokenScanner scanner = new TokenScanner(reader);
+        while (scanner.next()) {
+            if (scanner.type() != TokenType.INVALID) {
+                addToken(scanner);
             } else {
-                System.err.println("Please ensure the input file has a space after each token");
-                System.err.println("For example V_a=5; should be V_a = 5 ;");
-                System.err.println("Invalid token encountered: " + word);
-                System.exit(1);
+                reportInvalidToken(scanner);
+            }
+        }
+    }
+
+    // Lexes on the calling thread and hands each token to the queue instead of keeping it, for a parser
+    // that consumes them on another thread. The queue is always finished, or failed with the error.
+    public void tokenizeFile(String filePath, TokenQueue queue) {
+        try (Reader reader = new FileReader(filePath, StandardCharsets.UTF_8)) {
+            TokenScanner scanner = new TokenScanner(reader);
+            LexemeTable lexemes = tokens.lexemes();
+            while (scanner.next()) {
+                if (scanner.type() != TokenType.INVALID) {
+                    queue.put(tokenId++, scanner.type(), lexemes.intern(scanner.text()), lexemes,
+                            (int) scanner.offset(), scanner.length(), scanner.line());
+                } else {
+                    reportInvalidToken(scanner);
+                }
+            }
+            queue.finish();
+        } catch (IOException | RuntimeException e) {
+            queue.fail(e);
+        }
+    }
+
+    // Scans a memory mapping of the file; only distinct lexemes are copied out of the mapping. The tokens
+    // are still kept in getTokens(), a few ints each, so the heap grows with the number of tokens. The
+    // .tok format needs them all before it can be written.
+    public void tokenizeMapped(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            TokenScanner scanner = new TokenScanner(map(channel, filePath));
+            while (scanner.next()) {
+                if (scanner.type() != TokenType.INVALID) {
+                    addToken(scanner);
+                } else {
+                    reportInvalidToken(scanner);
+                }
+            }
+        }
+    }
+
+    // Scans a memory mapping of the file and writes each token to out as lexer.xml as soon as it is
+    // found. No token is kept, so the heap use does not depend on the size of the file, and getTokens()
+    // stays empty. The stream is left open.
+    public void tokenizeMapped(String filePath, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            TokenScanner scanner = new TokenScanner(map(channel, filePath));
+            XMLStreamWriter writer = startTokensXML(out);
+            char[] digits = new char[11];
+            while (scanner.next()) {
+                if (scanner.type() != TokenType.INVALID) {
+                    writeTokenXML(writer, tokenId++, scanner.type().ordinal(), scanner.word(), digits);
+                } else {
+                    reportInvalidToken(scanner);
+                }
+            }
+            endTokensXML(writer);
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write the tokens as XML: " + e.getMessage(), e);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, String filePath) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large to map: " + filePath + " (" + size + " bytes)");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    // Splits the mapped file into chunks and lexes them on the common ForkJoinPool. A chunk ends at a
+    // newline, which a string literal cannot contain, so a newline is always whitespace between two
+    // tokens. A line longer than a chunk, e.g. a compact generated program on one line, is split at other
+    // whitespace between two tokens instead.
+    public void tokenizeParallel(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            tokenizeChunks(map(channel, filePath), ForkJoinPool.commonPool().getParallelism());
+        }
+    }
+
+    void tokenizeChunks(ByteBuffer bytes, int parallelism) throws IOException {
+        List<ChunkTask> chunks = new ArrayList<>();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, bytes.limit() / (parallelism * 4) + 1);
+        int start = bytes.position();
+        while (start < bytes.limit()) {
+            int target = Math.min(bytes.limit(), start + chunkSize);
+            int end = target;
+            int newlineLimit = Math.min(bytes.limit(), target + chunkSize);
+            while (end < newlineLimit && bytes.get(end - 1) != '\n') {
+                end++;
+            }
+            if (end < bytes.limit() && bytes.get(end - 1) != '\n') {
+                end = TokenScanner.tokenBoundary(bytes, start, target, bytes.limit());
+            }
+            chunks.add(new ChunkTask(bytes, start, end));
+            start = end;
+        }
+        ForkJoinTask.invokeAll(chunks);
+
+        // Stitch the chunks together in file order: token IDs continue from the previous chunk, lines
+        // are shifted by the newlines before the chunk and lexeme IDs are moved into the shared table. A
+        // chunk that starts in the middle of a line also shifts the columns on its first line.
+        int lineBase = 0;
+        int columnBase = 0;
+        for (ChunkTask chunk : chunks) {
+            ChunkResult result;
+            try {
+                result = chunk.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Lexing chunk failed", e);
+            }
+
+            TokenBuffer chunkTokens = result.tokens;
+            LexemeTable chunkLexemes = chunkTokens.lexemes();
+            int[] remap = new int[chunkLexemes.size()];
+            for (int id = 0; id < remap.length; id++) {
+                remap[id] = LexemeTable.isReserved(id) ? id : tokens.lexemes().intern(chunkLexemes.get(id));
+            }
+            tokens.append(chunkTokens, tokenId, remap, lineBase);
+            tokenId += chunkTokens.size();
+            for (Diagnostic invalid : result.invalid) {
+                int column = invalid.getLine() == 1 ? columnBase + invalid.getColumn() : invalid.getColumn();
+                report(new Diagnostic(lineBase + invalid.getLine(), column, invalid.getMessage()));
+            }
+            lineBase += result.newlines;
+            columnBase = result.newlines > 0 ? result.endColumn - 1 : columnBase + result.endColumn - 1;
+        }
+    }
+
+    private static class ChunkResult {
+        TokenBuffer tokens = new TokenBuffer();
+        int newlines;
+        int endColumn; // Column after the chunk's last character
+        List<Diagnostic> invalid = new ArrayList<>(); // Lines relative to the chunk
+    }
+
+    // Lexes one chunk into its own buffer, with token IDs and lines relative to the chunk
+    private static class ChunkTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer bytes;
+        private final int start;
+        private final int end;
+
+        ChunkTask(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            ChunkResult result = new ChunkResult();
+            ByteBuffer chunk = bytes.duplicate();
+            chunk.limit(end).position(start);
+            TokenScanner scanner = new TokenScanner(chunk);
+            try {
+                while (scanner.next()) {
+                    if (scanner.type() == TokenType.INVALID) {
+                        result.invalid.add(invalidToken(scanner));
+                        continue;
+                    }
+                    result.tokens.add(0, scanner.type(), scanner.text(), (int) scanner.offset(),
+                            scanner.length(), scanner.line());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+            result.newlines = scanner.newlines();
+            result.endColumn = scanner.nextColumn();
+            return result;
+        }
+    }
+
+    private void addToken(TokenScanner scanner) {
+        tokens.add(tokenId++, scanner.type(), scanner.text(), (int) scanner.offset(), scanner.length(), scanner.line());
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    private void reportInvalidToken(TokenScanner scanner) throws LexerException {
+        report(invalidToken(scanner));
+    }
+
+    private void report(Diagnostic diagnostic) throws LexerException {
+        if (!recover) {
+            throw new LexerException(diagnostic);
         }
+        diagnostics.add(diagnostic);
+    }
+
+    private static Diagnostic invalidToken(TokenScanner scanner) {
+        return new Diagnostic(scanner.line(), scanner.column(), "Invalid token encountered: " + scanner.word());
     }
-    
 
-    private TokenType identifyTokenType(String word) {
-        if (word.matches(VARIABLE_REGEX)) return TokenType.V;
-        if (word.matches(FUNCTION_REGEX)) return TokenType.F;
-        if (word.matches(TEXT_REGEX)) return TokenType.T;
-        if (word.matches(NUMBER_REGEX)) return TokenType.N;
-        if (word.matches(RESERVED_KEYWORDS_REGEX)) return TokenType.RESERVED_KEYWORD;
-        if (word.matches(OPERATORS_REGEX)) return TokenType.RESERVED_KEYWORD; // Operators treated as reserved keywords
-        return TokenType.INVALID;
+    public void writeTokensToBinary(String outputFilePath) throws IOException {
+        TokenStreamFormat.write(tokens, outputFilePath);
     }
-       
 
     public void writeTokensToXML(String outputFilePath) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath));
-        writer.write("<TOKENSTREAM>\n");
-        for (Token token : tokens) {
-            writer.write(token.toXML() + "\n");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFilePath))) {
+            writeTokensToXML(out);
+        }
+    }
+
+    public void writeTokensToXML(OutputStream out) throws IOException {
+        writeTokensToXML(tokens, out);
+    }
+
+    // Streams the buffer straight to UTF-8 XML. The writer escapes the words, so "<" is written as &lt;
+    // The stream is left open.
+    public static void writeTokensToXML(TokenBuffer tokens, OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter writer = startTokensXML(out);
+            char[] digits = new char[11];
+            for (int i = 0; i < tokens.size(); i++) {
+                writeTokenXML(writer, tokens.id(i), tokens.typeOrdinal(i), tokens.word(i), digits);
+            }
+            endTokensXML(writer);
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write the tokens as XML: " + e.getMessage(), e);
         }
-        writer.write("</TOKENSTREAM>");
+    }
+
+    private static XMLStreamWriter startTokensXML(OutputStream out) throws XMLStreamException {
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        writer.writeStartElement("TOKENSTREAM");
+        writer.writeCharacters("\n");
+        return writer;
+    }
+
+    private static void writeTokenXML(XMLStreamWriter writer, int id, int typeOrdinal, String word, char[] digits)
+            throws XMLStreamException {
+        writer.writeStartElement("TOK");
+        writer.writeCharacters("\n  ");
+        writer.writeStartElement("ID");
+        int start = formatInt(id, digits);
+        writer.writeCharacters(digits, start, digits.length - start);
+        writer.writeEndElement();
+        writer.writeCharacters("\n  ");
+        writer.writeStartElement("CLASS");
+        writer.writeCharacters(CLASS_NAMES[typeOrdinal]);
+        writer.writeEndElement();
+        writer.writeCharacters("\n  ");
+        writer.writeStartElement("WORD");
+        writer.writeCharacters(word);
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+    }
+
+    private static void endTokensXML(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeEndElement();
         writer.close();
     }
+
+    // Writes a non-negative number right-aligned into digits and returns the index of its first digit
+    private static int formatInt(int value, char[] digits) {
+        int position = digits.length;
+        do {
+            digits[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return position;
+    }
 }
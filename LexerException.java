@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+// Thrown for the first invalid token when the lexer is not in recovery mode
+public class LexerException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final Diagnostic diagnostic;
+
+    public LexerException(Diagnostic diagnostic) {
+        super(diagnostic.toString());
+        this.diagnostic = diagnostic;
+    }
+
+    public Diagnostic getDiagnostic() {
+        return diagnostic;
+    }
+}
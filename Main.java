@@ -1,19 +1,135 @@
-import java.io.IOException;
+import java.io.*;
+import java.util.*;
 
 public class Main {
+    private static final String USAGE = "Usage: java Main [--mmap] [--recover] [--parallel-threshold <bytes>] [--binary | --pipeline] [--output <file>] <input-file>...";
+
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.out.println("Usage: java Main <input-file>");
+        boolean mapped = false;
+        boolean recover = false;
+        boolean binary = false;
+        boolean pipeline = false;
+        long parallelThreshold = Lexer.DEFAULT_PARALLEL_THRESHOLD;
+        List<String> inputFiles = new ArrayList<>();
+        String outputFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--mmap")) {
+                mapped = true;
+            } else if (args[i].equals("--recover")) {
+                recover = true;
+            } else if (args[i].equals("--parallel-threshold") && i + 1 < args.length) {
+                parallelThreshold = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--binary")) {
+                binary = true;
+            } else if (args[i].equals("--pipeline")) {
+                pipeline = true;
+            } else if (args[i].equals("--output") && i + 1 < args.length) {
+                outputFile = args[++i];
+            } else {
+                inputFiles.add(args[i]);
+            }
+        }
+        if (inputFiles.isEmpty() || (outputFile != null && inputFiles.size() > 1) || (binary && pipeline)) {
+            System.out.println(USAGE);
             return;
         }
 
+        // A single input goes to lexer.xml as before, several inputs each get <input-file>.lexer.xml. The
+        // pipeline writes the parser's output instead, parser.xml or <input-file>.parser.xml.
+        String name = pipeline ? "parser" : "lexer";
+        String extension = binary ? TokenStreamFormat.EXTENSION : ".xml";
+        int failedFiles = 0;
+        int errors = 0;
+        for (String inputFile : inputFiles) {
+            String output = outputFile != null ? outputFile
+                    : inputFiles.size() == 1 ? name + extension : inputFile + "." + name + extension;
+            List<Diagnostic> diagnostics = pipeline ? lexAndParse(inputFile, output, recover)
+                    : lex(inputFile, output, mapped, recover, parallelThreshold);
+            if (diagnostics == null) {
+                failedFiles++;
+                continue;
+            }
+            for (Diagnostic diagnostic : diagnostics) {
+                System.err.println((inputFiles.size() > 1 ? inputFile + ": " : "") + diagnostic);
+            }
+            if (!diagnostics.isEmpty()) {
+                failedFiles++;
+                errors += diagnostics.size();
+            }
+        }
+
+        if (recover && errors > 0) {
+            System.err.println(errors + (pipeline ? " error(s)" : " invalid token(s)") + " in " + failedFiles + " of " + inputFiles.size() + " file(s)");
+        }
+        if (failedFiles > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Returns the diagnostics of the file, or null if it could not be lexed at all
+    private static List<Diagnostic> lex(String inputFile, String outputFile, boolean mapped, boolean recover,
+                                        long parallelThreshold) {
         Lexer lexer = new Lexer();
+        lexer.setParallelThreshold(parallelThreshold);
+        lexer.setRecover(recover);
         try {
-            lexer.tokenizeFile(args[0]);
-            lexer.writeTokensToXML("lexer.xml");
-            System.out.println("Tokenization complete. Output written to output.xml.");
+            if (mapped && !TokenStreamFormat.isBinary(outputFile)) {
+                // For very large inputs: the tokens go to the XML file as they are scanned, none are kept
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+                    lexer.tokenizeMapped(inputFile, out);
+                } catch (IOException e) {
+                    new File(outputFile).delete();
+                    throw e;
+                }
+            } else {
+                if (mapped) {
+                    lexer.tokenizeMapped(inputFile);
+                } else {
+                    lexer.tokenizeFile(inputFile);
+                }
+                if (TokenStreamFormat.isBinary(outputFile)) {
+                    lexer.writeTokensToBinary(outputFile);
+                } else {
+                    lexer.writeTokensToXML(outputFile);
+                }
+            }
+            if (lexer.getDiagnostics().isEmpty()) {
+                System.out.println("Tokenization complete. Output written to " + outputFile + ".");
+            }
+            return lexer.getDiagnostics();
+        } catch (LexerException e) {
+            return List.of(e.getDiagnostic()); // Reported with the other files' errors, then the next file is lexed
         } catch (IOException e) {
             System.err.println("Error processing file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Lexes on a second thread while this one parses, so no token file is written or read. The tokens
+    // reach the parser through a bounded TokenQueue. With recover, both report every error they find.
+    private static List<Diagnostic> lexAndParse(String inputFile, String outputFile, boolean recover) {
+        Lexer lexer = new Lexer();
+        lexer.setRecover(recover);
+        SLRParser parser = new SLRParser();
+        parser.setRecover(recover);
+        TokenQueue queue = new TokenQueue();
+        Thread lexerThread = new Thread(() -> lexer.tokenizeFile(inputFile, queue), "lexer");
+        lexerThread.setDaemon(true);
+        lexerThread.start();
+        try {
+            parser.parse(queue, outputFile);
+            lexerThread.join();
+            List<Diagnostic> diagnostics = new ArrayList<>(lexer.getDiagnostics());
+            diagnostics.addAll(parser.getDiagnostics());
+            if (diagnostics.isEmpty()) {
+                System.out.println("Tokenization and parsing complete. Output written to " + outputFile + ".");
+            }
+            return diagnostics;
+        } catch (LexerException e) {
+            return List.of(e.getDiagnostic());
+        } catch (Exception e) {
+            System.err.println("Error parsing file: " + e.getMessage());
+            return null;
         }
     }
 }
@@ -0,0 +1,32 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Keeps the artifacts as byte arrays, for compilations whose intermediate files nobody reads from disk
+public class MemoryArtifactStore implements ArtifactStore {
+    private final Map<String, byte[]> artifacts = new ConcurrentHashMap<>();
+
+    @Override
+    public OutputStream create(String name) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                artifacts.put(name, toByteArray());
+            }
+        };
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        byte[] artifact = artifacts.get(name);
+        if (artifact == null) {
+            throw new FileNotFoundException(name);
+        }
+        return new ByteArrayInputStream(artifact);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return artifacts.containsKey(name);
+    }
+}
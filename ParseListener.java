@@ -0,0 +1,21 @@
+// Callbacks for every step of SLRParser. All methods default to doing nothing, and the token text and
+// type passed in are shared strings, so an unused listener costs nothing per step.
+public interface ParseListener {
+    ParseListener NONE = new ParseListener() {
+    };
+
+    // The stack is passed after the step was applied
+    default void shift(long step, int state, String tokenValue, String tokenType, int nextState, IntStack stack) {
+    }
+
+    default void reduce(long step, int state, String tokenValue, String tokenType, int rule, String lhs,
+                        int rhsLength, int gotoState, IntStack stack) {
+    }
+
+    default void accept(long step, int state, String tokenValue, String tokenType) {
+    }
+
+    // position is the index of the token that has no action in this state
+    default void error(long step, int state, String tokenValue, String tokenType, int position) {
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.*;
+import java.util.*;
+
+// SLR(1) ACTION and GOTO tables, generated from RecSPL.grammar by SLRTableGenerator and loaded from
+// parser.tables. ACTION is indexed by state and terminal ID, GOTO by state and non-terminal ID.
+public final class ParseTables {
+    public static final String TABLE_FILE = "parser.tables";
+    private static final int MAGIC = 0x534C5254; // "SLRT"
+    private static final int VERSION = 1;
+
+    // Terminals: keywords and operators use their LexemeTable IDs, the token classes come after them
+    public static final int V = LexemeTable.RESERVED_COUNT;
+    public static final int F = V + 1;
+    public static final int N = V + 2;
+    public static final int T = V + 3;
+    public static final int TERMINAL_COUNT = V + 4;
+
+    // Actions are packed as target << 2 | kind, so an empty entry (0) is an error
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    public final int[][] action;
+    public final int[][] gotoTable; // -1 where there is no transition
+    public final int[] ruleLhs;
+    public final int[] ruleLength;
+    public final String[] nonterminals;
+
+    public ParseTables(int[][] action, int[][] gotoTable, int[] ruleLhs, int[] ruleLength, String[] nonterminals) {
+        this.action = action;
+        this.gotoTable = gotoTable;
+        this.ruleLhs = ruleLhs;
+        this.ruleLength = ruleLength;
+        this.nonterminals = nonterminals;
+    }
+
+    public static int kind(int action) {
+        return action & 3;
+    }
+
+    public static int target(int action) {
+        return action >>> 2;
+    }
+
+    public static int shift(int state) {
+        return state << 2 | SHIFT;
+    }
+
+    public static int reduce(int rule) {
+        return rule << 2 | REDUCE;
+    }
+
+    public int stateCount() {
+        return action.length;
+    }
+
+    public int nonterminal(String name) {
+        return Arrays.asList(nonterminals).indexOf(name);
+    }
+
+    // Looks for parser.tables on the classpath first, then in the current directory
+    public static ParseTables load() throws IOException {
+        InputStream in = ParseTables.class.getResourceAsStream("/" + TABLE_FILE);
+        if (in == null) {
+            File file = new File(TABLE_FILE);
+            if (!file.exists()) {
+                throw new FileNotFoundException(TABLE_FILE + " not found, run 'java SLRTableGenerator' to create it");
+            }
+            in = new FileInputStream(file);
+        }
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            return read(data);
+        }
+    }
+
+    public static ParseTables read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a parser table file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported parser table version " + version);
+        }
+        int terminalCount = in.readInt();
+        if (terminalCount != TERMINAL_COUNT) {
+            throw new IOException("Parser tables were built for " + terminalCount + " terminals, expected "
+                    + TERMINAL_COUNT + ". Regenerate them with 'java SLRTableGenerator'");
+        }
+
+        String[] nonterminals = new String[in.readInt()];
+        for (int i = 0; i < nonterminals.length; i++) {
+            nonterminals[i] = in.readUTF();
+        }
+        int ruleCount = in.readInt();
+        int[] ruleLhs = new int[ruleCount];
+        int[] ruleLength = new int[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            ruleLhs[i] = in.readInt();
+            ruleLength[i] = in.readInt();
+        }
+        int stateCount = in.readInt();
+        int[][] action = new int[stateCount][terminalCount];
+        int[][] gotoTable = new int[stateCount][nonterminals.length];
+        for (int s = 0; s < stateCount; s++) {
+            for (int t = 0; t < terminalCount; t++) {
+                action[s][t] = in.readInt();
+            }
+            for (int n = 0; n < nonterminals.length; n++) {
+                gotoTable[s][n] = in.readInt();
+            }
+        }
+        return new ParseTables(action, gotoTable, ruleLhs, ruleLength, nonterminals);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(TERMINAL_COUNT);
+        out.writeInt(nonterminals.length);
+        for (String nonterminal : nonterminals) {
+            out.writeUTF(nonterminal);
+        }
+        out.writeInt(ruleLhs.length);
+        for (int i = 0; i < ruleLhs.length; i++) {
+            out.writeInt(ruleLhs[i]);
+            out.writeInt(ruleLength[i]);
+        }
+        out.writeInt(action.length);
+        for (int s = 0; s < action.length; s++) {
+            for (int t = 0; t < TERMINAL_COUNT; t++) {
+                out.writeInt(action[s][t]);
+            }
+            for (int n = 0; n < nonterminals.length; n++) {
+                out.writeInt(gotoTable[s][n]);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+// One phase of the compiler as a function from its input to its output, so Compiler can run all phases in
+// one JVM and hand each the previous phase's data structure instead of a file. Inputs a phase needs besides
+// the previous output are passed to its constructor. A phase that fails throws, with the reason as message.
+public interface Phase<I, O> {
+    String name();
+
+    O run(I input) throws Exception;
+}
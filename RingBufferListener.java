@@ -0,0 +1,90 @@
+// Remembers the last few parser steps, so an error can show how the parser got there
+public class RingBufferListener implements ParseListener {
+    private static final int SHIFT = 0;
+    private static final int REDUCE = 1;
+    private static final int ACCEPT = 2;
+    private static final int ERROR = 3;
+
+    private final long[] steps;
+    private final int[] states;
+    private final int[] kinds;
+    private final int[] targets; // Next state for a shift, rule for a reduce
+    private final String[] tokenValues;
+    private final String[] tokenTypes;
+    private final String[] lhs;
+    private int next = 0;
+    private int count = 0;
+
+    public RingBufferListener(int capacity) {
+        steps = new long[capacity];
+        states = new int[capacity];
+        kinds = new int[capacity];
+        targets = new int[capacity];
+        tokenValues = new String[capacity];
+        tokenTypes = new String[capacity];
+        lhs = new String[capacity];
+    }
+
+    @Override
+    public void shift(long step, int state, String tokenValue, String tokenType, int nextState, IntStack stack) {
+        record(step, state, tokenValue, tokenType, SHIFT, nextState, null);
+    }
+
+    @Override
+    public void reduce(long step, int state, String tokenValue, String tokenType, int rule, String lhs,
+                       int rhsLength, int gotoState, IntStack stack) {
+        record(step, state, tokenValue, tokenType, REDUCE, rule, lhs);
+    }
+
+    @Override
+    public void accept(long step, int state, String tokenValue, String tokenType) {
+        record(step, state, tokenValue, tokenType, ACCEPT, 0, null);
+    }
+
+    @Override
+    public void error(long step, int state, String tokenValue, String tokenType, int position) {
+        record(step, state, tokenValue, tokenType, ERROR, position, null);
+    }
+
+    private void record(long step, int state, String tokenValue, String tokenType, int kind, int target, String symbol) {
+        steps[next] = step;
+        states[next] = state;
+        kinds[next] = kind;
+        targets[next] = target;
+        tokenValues[next] = tokenValue;
+        tokenTypes[next] = tokenType;
+        lhs[next] = symbol;
+        next = (next + 1) % steps.length;
+        count = Math.min(count + 1, steps.length);
+    }
+
+    // One line per remembered step, oldest first
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int slot = (next - count + i + steps.length) % steps.length;
+            builder.append("  Step ").append(steps[slot]).append(": state ").append(states[slot])
+                    .append(", token '").append(tokenValues[slot]).append("' (Type: ").append(tokenTypes[slot]).append("), ");
+            switch (kinds[slot]) {
+                case SHIFT:
+                    builder.append("shift to state ").append(targets[slot]);
+                    break;
+                case REDUCE:
+                    builder.append("reduce using rule ").append(targets[slot]).append(" to ").append(lhs[slot]);
+                    break;
+                case ACCEPT:
+                    builder.append("accept");
+                    break;
+                default:
+                    builder.append("no valid action");
+                    break;
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    public int size() {
+        return count;
+    }
+}
@@ -1,1542 +1,729 @@
 import java.io.*;
 import java.util.*;
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.*;
-import org.w3c.dom.*;
 
-public class SLRParser {
-    private static final int MAX_STEPS = 1000;
-    private Stack<Integer> stack = new Stack<>();
-    private List<Token> tokens = new ArrayList<>();
+public class SLRParser implements Phase<TokenBuffer, SyntaxTree> {
+    private static final int RECENT_STEPS = 16; // Steps shown with a parse error when not tracing
+    private static final String EOF_VALUE = "$"; // What the parser sees once the tokens run out
+    private static final String EOF_TYPE = "EOF";
+    // Non-terminals panic-mode recovery resumes after
+    private static final String[] SYNC_NONTERMINALS = { "COMMAND", "INSTRUC", "LOCVARS", "GLOBVARS", "FUNCTIONS" };
+    private IntStack stack = new IntStack();
+    private IntStack nodes = new IntStack(); // Tree node of each stack entry above the bottom state
+    private long maxSteps = 0; // 0 means only the bound derived from the input
+    private ParseListener listener = ParseListener.NONE;
+    private long steps = 0;
+    private boolean recover = false;
+    private List<Diagnostic> diagnostics = new ArrayList<>();
+    private int shiftsSinceError;
+    private int lastErrorToken;
+    private int[] syncSymbols;
+    private IntStack simulated = new IntStack(); // States canShift pushed on top of the real stack
+    private TokenBuffer tokens = new TokenBuffer();
+    private TokenStream source; // Still has tokens to pull, null once all tokens are in the buffer
     private int currentTokenIndex = 0;
-    private int nodeId = 1;
-    private Document doc;
+    private int builtNodes = 0;
+    private static final int ENCLOSING_ATTEMPTS = 4; // Subtrees around an edit reparse tries before the root
+    private SyntaxTreeXMLWriter xmlWriter; // Set while parse(inputFile, outputFile) streams parser.xml
+    private static ParseTables tables; // Loaded once from parser.tables
+    private int progSymbol;
     private static final String INPUT_FILE = "lexer.xml";
     private static final String OUTPUT_FILE = "parser.xml";
+    private static final String[] TYPE_NAMES = new String[TokenType.values().length];
 
-    private static class Token {
-        int id;
-        String type;
-        String value;
-
-        Token(int id, String type, String value) {
-            this.id = id;
-            this.type = type;
-            this.value = value;
+    static {
+        for (TokenType type : TokenType.values()) {
+            TYPE_NAMES[type.ordinal()] = type.toString().toLowerCase();
         }
     }
 
     public void parse() {
+        parse(INPUT_FILE, OUTPUT_FILE);
+    }
+
+    public void parse(String inputFile, String outputFile) {
         try {
             System.out.println("Starting parsing process...");
-            System.out.println("Reading tokens from " + INPUT_FILE);
-            readTokens(INPUT_FILE);
+            System.out.println("Reading tokens from " + inputFile);
+            openTokens(inputFile);
 
             System.out.println("Initializing parser...");
             initializeParser();
 
             System.out.println("Parsing tokens...");
-            Element root = parseTokens();
+            parseTokens(outputFile);
+            if (!diagnostics.isEmpty()) {
+                // Recovery already dropped parser.xml, so the later phases do not run on a broken tree
+                System.err.println("\nParsing failed with " + diagnostics.size() + " syntax error(s):");
+                for (Diagnostic diagnostic : diagnostics) {
+                    System.err.println("→ " + diagnostic);
+                }
+                System.exit(1);
+            }
 
-            System.out.println("Writing output to " + OUTPUT_FILE);
-            writeOutput(root, OUTPUT_FILE);
+            System.out.println("Writing output to " + outputFile);
+            finishOutput();
 
             System.out.println("Parsing completed successfully!");
 
         } catch (Exception e) {
             System.err.println("\nParsing failed:");
             System.err.println("→ " + e.getMessage());
+            if (listener instanceof RingBufferListener && ((RingBufferListener) listener).size() > 0) {
+                System.err.println("Last parser steps:");
+                System.err.print(((RingBufferListener) listener).describe());
+            }
             System.exit(1);
         }
     }
 
-    private void readTokens(String inputFile) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document document = builder.parse(new File(inputFile));
+    @Override
+    public String name() {
+        return "Parser";
+    }
+
+    // As parse(tokens), and in recovery mode a parse with syntax errors fails with the first of them
+    @Override
+    public SyntaxTree run(TokenBuffer tokens) throws Exception {
+        SyntaxTree tree = parse(tokens);
+        if (!diagnostics.isEmpty()) {
+            throw new Exception(diagnostics.size() + " syntax error(s), the first: " + diagnostics.get(0));
+        }
+        return tree;
+    }
+
+    // Parses tokens that are already in memory, e.g. straight from the Lexer
+    public SyntaxTree parse(TokenBuffer tokens) throws Exception {
+        this.tokens = tokens;
+        source = null;
+        currentTokenIndex = 0;
+        initializeParser();
+        return parseTokens();
+    }
+
+    // Parses tokens pulled from source as they arrive, e.g. from a TokenQueue a lexer thread fills
+    public SyntaxTree parse(TokenStream source) throws Exception {
+        tokens = new TokenBuffer();
+        this.source = source;
+        currentTokenIndex = 0;
+        initializeParser();
+        try {
+            return parseTokens();
+        } finally {
+            closeTokens();
+        }
+    }
+
+    // As parse(source), and streams the tree to outputFile
+    public SyntaxTree parse(TokenStream source, String outputFile) throws Exception {
+        tokens = new TokenBuffer();
+        this.source = source;
+        currentTokenIndex = 0;
+        initializeParser();
+        SyntaxTree tree = parseTokens(outputFile);
+        finishOutput();
+        return tree;
+    }
+
+    // Parses tokens again after an edit and returns the tree a full parse of tokens would build. previous
+    // is turned into that tree in place: only the smallest subtree around the edit that parses on its own
+    // is parsed again, and in it the subtrees the edit did not touch are kept as they are. If no such
+    // subtree parses, tokens are parsed in full and previous is left unusable. Tokens are matched by ID
+    // and text, so the buffers of an IncrementalLexer, whose tokens keep their IDs across edits, work best.
+    public SyntaxTree reparse(SyntaxTree previous, TokenBuffer tokens) throws Exception {
+        this.tokens = tokens;
+        source = null;
+        initializeParser();
+        steps = 0;
+        diagnostics = new ArrayList<>();
+        // Nothing is taken over from a tree recovery changed or gave up on
+        if (previous.errorCount() == 0 && previous.root() != SyntaxTree.NONE) {
+            // The edit is what lies between the tokens both ends have in common
+            TokenBuffer oldTokens = previous.getTokens();
+            boolean sameLexemes = oldTokens.lexemes() == tokens.lexemes();
+            int editStart = 0;
+            int oldEnd = oldTokens.size();
+            int newEnd = tokens.size();
+            while (editStart < oldEnd && editStart < newEnd && sameToken(oldTokens, editStart, tokens, editStart, sameLexemes)) {
+                editStart++;
+            }
+            while (oldEnd > editStart && newEnd > editStart && sameToken(oldTokens, oldEnd - 1, tokens, newEnd - 1, sameLexemes)) {
+                oldEnd--;
+                newEnd--;
+            }
+            if (editStart == oldEnd && editStart == newEnd) {
+                previous.moveTokens(tokens, editStart, oldEnd, newEnd, SyntaxTree.NONE);
+                builtNodes = 0;
+                return previous;
+            }
+            if (editStart > 0 && replaceSubtree(previous, editStart, oldEnd, newEnd)) {
+                return previous;
+            }
+        }
+        currentTokenIndex = 0;
+        initializeParser();
+        return parseTokens();
+    }
+
+    // Nodes the last parse built. A reparse keeps every other node of the previous tree.
+    public int getBuiltNodes() {
+        return builtNodes;
+    }
 
-        NodeList tokenNodes = document.getElementsByTagName("TOK");
-        for (int i = 0; i < tokenNodes.getLength(); i++) {
-            Element tokenElement = (Element) tokenNodes.item(i);
-            int id = Integer.parseInt(tokenElement.getElementsByTagName("ID").item(0).getTextContent());
-            String type = tokenElement.getElementsByTagName("CLASS").item(0).getTextContent();
-            String value = tokenElement.getElementsByTagName("WORD").item(0).getTextContent();
-            tokens.add(new Token(id, type, value));
+    // Parses lexer.xml or a .tok file without writing any output
+    public SyntaxTree parseFile(String inputFile) throws Exception {
+        openTokens(inputFile);
+        try {
+            initializeParser();
+            return parseTokens();
+        } finally {
+            closeTokens();
+        }
+    }
+
+    // In recovery mode a syntax error is recorded as a diagnostic and parsing resumes after the next
+    // command, instruction list, variable declarations or function, so one run reports every error. The
+    // parser.xml of a parse with errors is not written. Otherwise the first syntax error throws.
+    public void setRecover(boolean recover) {
+        this.recover = recover;
+    }
+
+    // The syntax errors of the last parse in recovery mode
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    // Receives every parser step, e.g. a ConsoleTraceListener for the full trace
+    public void setListener(ParseListener listener) {
+        this.listener = listener;
+    }
+
+    // Optional cap on the number of steps, below the bound derived from the input
+    public void setMaxSteps(long maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    // Number of shift and reduce steps taken by the last parse
+    public long getSteps() {
+        return steps;
+    }
+
+    // The tokens of lexer.xml are pulled one at a time as the parser needs them, a .tok file is read at once
+    private void openTokens(String inputFile) throws IOException {
+        currentTokenIndex = 0;
+        if (TokenStreamFormat.isBinary(inputFile)) {
+            tokens = TokenStreamFormat.read(inputFile);
+            source = null;
+        } else {
+            tokens = new TokenBuffer();
+            source = new XMLTokenReader(inputFile);
+        }
+    }
+
+    private void closeTokens() throws IOException {
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+    }
+
+    // Parsers on several threads, as in a batch compile, share the tables
+    private static synchronized void loadTables() throws IOException {
+        if (tables == null) {
+            tables = ParseTables.load();
         }
     }
 
     private void initializeParser() throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        doc = builder.newDocument();
+        loadTables();
+        progSymbol = tables.nonterminal("PROG");
+        if (syncSymbols == null) {
+            syncSymbols = Arrays.stream(SYNC_NONTERMINALS).mapToInt(tables::nonterminal).filter(n -> n >= 0).toArray();
+        }
+        stack.clear();
         stack.push(0);
+        nodes.clear();
     }
 
-    private Element parseTokens() throws Exception {
-        Element syntree = doc.createElement("SYNTREE");
-        doc.appendChild(syntree);
+    // Parses while the tree is written to outputFile, the partial file is removed if the parse fails
+    private SyntaxTree parseTokens(String outputFile) throws Exception {
+        xmlWriter = new SyntaxTreeXMLWriter(outputFile);
+        try {
+            return parseTokens();
+        } catch (Exception e) {
+            if (xmlWriter != null) {
+                xmlWriter.abort();
+                xmlWriter = null;
+            }
+            throw e;
+        } finally {
+            closeTokens();
+        }
+    }
 
-        Element root = null;
-        Element innerNodes = doc.createElement("INNERNODES");
-        Element leafNodes = doc.createElement("LEAFNODES");
+    // Nothing is left to finish when recovery dropped the output
+    private void finishOutput() throws IOException {
+        if (xmlWriter != null) {
+            xmlWriter.close();
+            xmlWriter = null;
+        }
+    }
 
-        int steps = 0;
-        while (steps < MAX_STEPS) {
+    private SyntaxTree parseTokens() throws Exception {
+        SyntaxTree tree = new SyntaxTree(tokens, tables.nonterminals);
+
+        long stepLimit = stepLimit();
+        steps = 0;
+        diagnostics = new ArrayList<>();
+        shiftsSinceError = 1;
+        lastErrorToken = SyntaxTree.NONE;
+        while (steps < stepLimit) {
+            if (source != null && currentTokenIndex == tokens.size()) {
+                // Pull the lookahead, the limit grows with every token read
+                if (!source.next(tokens)) {
+                    closeTokens();
+                }
+                stepLimit = stepLimit();
+            }
             int state = stack.peek();
-            Token token = currentTokenIndex < tokens.size() ? tokens.get(currentTokenIndex) : new Token(-1, "EOF", "$");
-            String action = getAction(state, token);
+            String tokenValue = currentTokenValue();
+            String tokenType = currentTokenType();
+            int terminal = currentTerminal();
+            int action = tables.action[state][terminal];
+            int kind = ParseTables.kind(action);
 
-            System.out.println("Step " + steps + ":");
-            System.out.println("  Current state: " + state);
-            System.out.println("  Current token: " + token.value + " (Type: " + token.type + ")");
-            System.out.println("  Action: " + action);
 
-            if (action.startsWith("s")) {
-                int nextState = Integer.parseInt(action.substring(1));
+            if (kind == ParseTables.SHIFT) {
+                int nextState = ParseTables.target(action);
                 stack.push(nextState);
-                Element leaf = createLeafNode(token);
-                leafNodes.appendChild(leaf);
+                nodes.push(tree.addLeaf(terminal, currentTokenIndex < tokens.size() ? currentTokenIndex : SyntaxTree.NONE, state));
+                if (xmlWriter != null) {
+                    xmlWriter.leaf(tokenValue);
+                }
                 currentTokenIndex++;
-                System.out.println("  Shift to state " + nextState);
-            } else if (action.startsWith("r")) {
-                int ruleNumber = Integer.parseInt(action.substring(1));
-                Reduction reduction = reduce(ruleNumber);
-                Element node = createInnerNode(reduction);
-                innerNodes.appendChild(node);
-                if (root == null && reduction.lhs.equals("PROG")) {
-                    root = createRootNode(node);
-                    syntree.appendChild(root);
+                shiftsSinceError++;
+                listener.shift(steps, state, tokenValue, tokenType, nextState, stack);
+            } else if (kind == ParseTables.REDUCE) {
+                int ruleNumber = ParseTables.target(action);
+                int lhs = tables.ruleLhs[ruleNumber];
+                int rhsLength = tables.ruleLength[ruleNumber];
+                String lhsName = tables.nonterminals[lhs];
+                stack.pop(rhsLength);
+                int node = tree.addNode(lhs, nodes, rhsLength, stack.peek());
+                nodes.pop(rhsLength);
+                nodes.push(node);
+                if (xmlWriter != null) {
+                    xmlWriter.innerNode(lhsName, rhsLength);
                 }
-                for (int i = 0; i < reduction.rhsLength; i++) {
-                    stack.pop();
+                if (tree.root() == SyntaxTree.NONE && lhs == progSymbol) {
+                    tree.setRoot(node);
+                    if (xmlWriter != null) {
+                        xmlWriter.root(lhsName);
+                    }
                 }
-                int gotoState = getGotoState(stack.peek(), reduction.lhs);
+                int gotoState = tables.gotoTable[stack.peek()][lhs];
                 if (gotoState == -1) {
-                    //throw new Exception("Invalid GOTO state for " + reduction.lhs + " in state " + stack.peek());
-                    if (gotoState == -1) {
-                        throw new Exception("Invalid GOTO state for non-terminal '" + reduction.lhs + "' after reducing using rule " + ruleNumber + " in state " + stack.peek());
-                    }
-                    
+                    throw new Exception("Invalid GOTO state for non-terminal '" + lhsName + "' after reducing using rule " + ruleNumber + " in state " + stack.peek());
                 }
                 stack.push(gotoState);
-                System.out.println("  Reduce using rule " + ruleNumber + ": " + reduction.lhs + " -> "
-                        + reduction.rhsLength + " symbols");
-                System.out.println("  Goto state " + gotoState);
-            } else if (action.equals("acc")) {
-                System.out.println("  Accept");
+                listener.reduce(steps, state, tokenValue, tokenType, ruleNumber, lhsName, rhsLength, gotoState, stack);
+            } else if (kind == ParseTables.ACCEPT) {
+                listener.accept(steps, state, tokenValue, tokenType);
                 break;
             } else {
-                // System.out.println("  Error: Unexpected action");
-                // throw new Exception("Parsing error at token: " + token.value + " in state " + state);
-                System.out.println(" Error: Unexpected action " + action + "' for token '" + token.value + "' (Type: " + token.type + ") at position " + currentTokenIndex + " in state " + state);
-                throw new Exception("Parsing error at token '" + token.value + "' (Type: " + token.type + ") at position " + currentTokenIndex + " in state " + state + ". No valid action found.");
+                listener.error(steps, state, tokenValue, tokenType, currentTokenIndex);
+                if (recover) {
+                    if (!recover(tree, state)) {
+                        break; // Nothing after the error can be parsed, the tree stays partial
+                    }
+                    stepLimit = stepLimit();
+                    steps++;
+                    continue;
+                }
+                System.out.println(" Error: Unexpected action " + actionName(action, state) + "' for token '" + tokenValue + "' (Type: " + tokenType + ") at position " + currentTokenIndex + " in state " + state);
+                throw new Exception("Parsing error at token '" + tokenValue + "' (Type: " + tokenType + ") at position " + currentTokenIndex + " in state " + state + ". No valid action found.");
             }
 
-            System.out.println("  Stack: " + stack);
-            System.out.println();
-
             steps++;
         }
 
-        if (steps == MAX_STEPS) {
+        if (steps == stepLimit) {
             throw new Exception("Maximum number of steps reached. Parsing incomplete.");
         }
-
-        syntree.appendChild(innerNodes);
-        syntree.appendChild(leafNodes);
-        return syntree;
+        builtNodes = tree.size();
+        return tree;
     }
 
-private String getAction(int state, Token token) {
-        String tokenValue = token.value;
-        String tokenType = token.type;
-
-        switch (state) {
-            case 0:
-                if (tokenValue.equals("main")) return "s2";
-                break;
-            case 1:
-                if (tokenValue.equals("$"))
-                    return "s3";
-                break;
-            case 2:
-                if (tokenValue.equals("num")) return "s6";
-                if (tokenValue.equals("text")) return "s7";
-                if (tokenValue.equals("begin")) return "r2";
-                break;
-            case 3:
-                if (tokenValue.equals("$"))
-                    return "acc";
-                break;
-            case 4:
-                if (tokenValue.equals("begin")) return "s9";
-                break;
-            case 5:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                break;
-            case 6:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "r4";
-                break;
-            case 7:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "r5";
+    // Parses the edit again within the smallest subtree of tree that holds it and the token before it, or an
+    // ancestor of that subtree, and puts the result in the subtree's place. The parser is deterministic:
+    // started in the state the old subtree was started in, with the same tokens before and after it, it
+    // builds the subtree a full parse would build.
+    private boolean replaceSubtree(SyntaxTree tree, int editStart, int oldEnd, int newEnd) {
+        int node = tree.parent(tree.leaf(editStart - 1));
+        while (node != SyntaxTree.NONE && tree.lastToken(node) < oldEnd - 1) {
+            node = tree.parent(node);
+        }
+        if (node == SyntaxTree.NONE) {
+            return false;
+        }
+        tree.moveTokens(tokens, editStart, oldEnd, newEnd, node);
+        for (int attempt = 1; node != SyntaxTree.NONE; attempt++) {
+            int replacement = parseSubtree(tree, node, editStart, newEnd);
+            if (replacement != SyntaxTree.NONE) {
+                tree.replace(node, replacement);
+                return true;
+            }
+            // Lists are right recursive, so climbing out of a long list one ancestor at a time would take an
+            // attempt per element
+            node = attempt == ENCLOSING_ATTEMPTS && node != tree.root() ? tree.root() : tree.parent(node);
+        }
+        return false;
+    }
 
-                break;
-            case 8:
-                if (tokenValue.equals("$")) return "r47";
-                if (tokenValue.equals("num"))
-                    return "s16";
-                if (tokenValue.equals("end"))
-                    return "r47";
-                if (tokenValue.equals("void")) return "s17";
-                break;
-            case 9:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenValue.equals("end")) return "r8";
-                if (tokenValue.equals("skip")) return "s20";
-                if (tokenValue.equals("halt")) return "s21";
-                if ((tokenValue.equals("return")) || (tokenValue.equals("print")))
-                    return "s22";
-                if (tokenValue.equals("if"))
-                    return "s28";
-                if (tokenType.equals("f") && tokenValue.startsWith("F_"))
-                    return "s29";
-                break;
-            case 10:
-                if (tokenValue.equals(","))
-                    return "s30";
-                break;
-            case 11:
-                if (tokenValue.equals(","))
-                    return "r6";
-                if (tokenValue.equals(";"))
-                    return "r6";
-                if (tokenValue.equals("lst"))
-                    return "r6";
-                if (tokenValue.equals("="))
-                    return "r6";
-                if (tokenValue.equals(")"))
-                    return "r6";
-                break;
-            case 12:
-                if (tokenValue.equals("$")) return "r1";
-                break;
-            case 13:
-                if (tokenValue.equals("$")) return "r47";
-                if (tokenValue.equals("num"))
-                    return "s16";
-                if (tokenValue.equals("end")) return "r47";
-                if (tokenValue.equals("void")) return "s17";
-                break;
-            case 14:
-                if (tokenValue.equals("{")) return "s34";
-                break;
-            case 15:
-                if (tokenType.equals("f") && tokenValue.startsWith("F_"))
-                    return "s29";
-                break;
-            case 16:
-                if (tokenType.equals("f") && tokenValue.startsWith("F_"))
-                    return "r51";
-            case 17:
-                if (tokenType.equals("f") && tokenValue.startsWith("F_"))
-                    return "r52";
-                break;
-            case 18:
-                if (tokenValue.equals("end")) return "s36";
-                break;
-            case 19:
-                if (tokenValue.equals(";")) return "s37";
-                break;
-            case 20:
-                if (tokenValue.equals(";"))
-                    return "r10";
-                break;
-            case 21:
-                if (tokenValue.equals(";")) return "r11";
-                break;
-            case 22:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                break;
-            case 23:
-                if (tokenValue.equals(";"))
-                    return "r13";
-            case 24:
-                if (tokenValue.equals(";"))
-                    return "r14";
-            case 25:
-                if (tokenValue.equals(";"))
-                    return "r15";
-                break;
-            case 26:
-                if (tokenValue.equals("lst")) return "s43";
-                if (tokenValue.equals("=")) return "s44";
-                break;
-            case 27:
-                if (tokenValue.equals("("))
-                    return "s45";
-                break;
-            case 28:
-                if (tokenValue.equals("not")) return "s59";
-                if (tokenValue.equals("sqrt"))
-                    return "s60";
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                        return "s53";
-                if (tokenValue.equals("grt"))
-                        return "s54";
-                if (tokenValue.equals("add"))
-                        return "s55";
-                if (tokenValue.equals("sub"))
-                        return "s56";
-                if (tokenValue.equals("mul"))
-                        return "s57";
-                if (tokenValue.equals("div"))
-                        return "s58";
-                break;
-            case 29:
-                if (tokenValue.equals("(")) // was )
-                    return "r46";
-                break;
-            case 30:
-                if (tokenValue.equals("num"))
-                    return "s6";
-                if (tokenValue.equals("text"))
-                    return "s7";
-                if (tokenValue.equals("begin"))
-                    return "r2";
-                break;
-            case 31:
-                if (tokenValue.equals("$"))
-                    return "r48";
-                if (tokenValue.equals("end"))
-                    return "r48";
-                break;
-            case 32:
-                if (tokenValue.equals("$"))
-                    return "r49";
-                if (tokenValue.equals("num"))
-                    return "r49";
-                if (tokenValue.equals("end"))
-                    return "r49";
-                if (tokenValue.equals("void"))
-                    return "r49";
-                break;
-            case 33:
-                if (tokenValue.equals("num")) return "s6";
-                if (tokenValue.equals("text")) return "s7";
-                break;
-            case 34:
-                if (tokenValue.equals("num"))
-                    return "r54";
-                if (tokenValue.equals("text"))
-                    return "r54";
-                break;
-            case 35:
-                if (tokenValue.equals("(")) //was )
-                    return "s64";
-                break;
-            case 36:
-                if (tokenValue.equals("$"))
-                    return "r7";
-                if (tokenValue.equals("num"))
-                    return "r7";
-                if (tokenValue.equals("else"))
-                    return "r7";
-                if (tokenValue.equals(";"))
-                    return "r7";
-                if (tokenValue.equals("void"))
-                    return "r7";
-                if (tokenValue.equals("}"))
-                    return "r7";
-                break;
-            case 37:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenValue.equals("end"))
-                    return "r8";
-                if (tokenValue.equals("skip"))
-                    return "s20";
-                if (tokenValue.equals("halt"))
-                    return "s21";
-                if ((tokenValue.equals("return")) || (tokenValue.equals("print")))
-                    return "s22";
-                if (tokenValue.equals("if"))
-                    return "s28";
-                if (tokenType.equals("f") && tokenValue.startsWith("F_"))
-                    return "s29";
-                break;
-            case 38:
-                if (tokenValue.equals(";"))
-                    return "r12";
-                break;
-            case 39:
-                if (tokenValue.equals(","))
-                    return "r16";
-                if (tokenValue.equals(";"))
-                    return "r16";
-                if (tokenValue.equals(")"))
-                    return "r16";
-                break;
-            case 40:
-                if (tokenValue.equals(","))
-                    return "r17";
-                if (tokenValue.equals(";"))
-                    return "r17";
-                if (tokenValue.equals(")"))
-                    return "r17";
-                break;
-            case 41:
-                if (tokenValue.equals(","))
-                    return "r18";
-                if (tokenValue.equals(";"))
-                    return "r18";
-                if (tokenValue.equals(")"))
-                    return "r18";
-                break;
-            case 42:
-                if (tokenValue.equals(","))
-                    return "r19";
-                if (tokenValue.equals(";"))
-                    return "r19";
-                if (tokenValue.equals(")"))
-                    return "r19";
-                break;
-            case 43:
-                if (tokenValue.equals("input"))
-                    return "s66";
-                break;
-            case 44:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                if (tokenValue.equals("not"))
-                    return "s59";
-                if (tokenValue.equals("sqrt"))
-                    return "s60";
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                    return "s53";
-                if (tokenValue.equals("grt"))
-                    return "s54";
-                if (tokenValue.equals("add"))
-                    return "s55";
-                if (tokenValue.equals("sub"))
-                    return "s56";
-                if (tokenValue.equals("mul"))
-                    return "s57";
-                if (tokenValue.equals("div"))
-                    return "s58";
-                if (tokenType.equals("f") && tokenValue.startsWith("F_"))
-                    return "s29";
-                break;
-            case 45:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                break;
-            case 46:
-                if (tokenValue.equals("then"))
-                    return "s74";
-            case 47:
-                if (tokenValue.equals("then")) return "r31";
-                break;
-            case 48:
-                if (tokenValue.equals("then"))
-                    return "r32";
-                break;
-            case 49:
-                if (tokenValue.equals("(")) return "s75";
-                break;
-            case 50:
-                if (tokenValue.equals("("))
-                    return "s76";
-            case 51:
-                if (tokenValue.equals("("))
-                    return "r38";
-                break;
-            case 52:
-                if (tokenValue.equals("("))
-                    return "r39";
-                break;
-            case 53:
-                if (tokenValue.equals("("))
-                    return "r40";
-                break;
-            case 54:
-                if (tokenValue.equals("("))
-                    return "r41";
-                break;
-            case 55:
-                if (tokenValue.equals("("))
-                    return "r42";
-                break;
-            case 56:
-                if (tokenValue.equals("("))
-                    return "r43";
-                break;
-            case 57:
-                if (tokenValue.equals("("))
-                    return "r44";
-                break;
-            case 58:
-                if (tokenValue.equals("("))
-                    return "r45";
-                break;
-            case 59:
-                if (tokenValue.equals("("))
-                    return "r36";
-                break;
-            case 60:
-                if (tokenValue.equals("("))
-                    return "r37";
-                break;
-            case 61:
-                if (tokenValue.equals("begin"))
-                    return "r3";
-                break;
-            case 62:
-                if (tokenValue.equals("begin"))
-                    return "s9";
-            case 63:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_")) return "s11";
-                break;
-            case 64:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                break;
-            case 65:
-                if (tokenValue.equals("end")) return "r9";
-                break;
-            case 66:
-                if (tokenValue.equals(";")) return "r20";
-                break;
-            case 67:
-                if (tokenValue.equals(";"))
-                    return "r21";
-                break;
-            case 68:
-                if (tokenValue.equals(";"))
-                    return "r24";
-                break;
-            case 69:
-                if (tokenValue.equals(";"))
-                    return "r25";
-                break;
-            case 70:
-                if (tokenValue.equals(";"))
-                    return "r26";
-                break;
-            case 71:
-                if (tokenValue.equals("(")) return "s80"; //tess [was ) ]
-                break;
-            case 72:
-                if (tokenValue.equals("(")) //tess [was ) ]
-                    return "s81";
-                break;
-            case 73:
-                if (tokenValue.equals(","))
-                    return "s82";
-                break;
-            case 74:
-                if (tokenValue.equals("begin"))
-                    return "s9";
-            case 75:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                    return "s53";
-                if (tokenValue.equals("grt"))
-                    return "s54";
-                if (tokenValue.equals("add"))
-                    return "s55";
-                if (tokenValue.equals("sub"))
-                    return "s56";
-                if (tokenValue.equals("mul"))
-                    return "s57";
-                if (tokenValue.equals("div"))
-                    return "s58";
-                break;
-            case 76:
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                    return "s53";
-                if (tokenValue.equals("grt"))
-                    return "s54";
-                if (tokenValue.equals("add"))
-                    return "s55";
-                if (tokenValue.equals("sub"))
-                    return "s56";
-                if (tokenValue.equals("mul"))
-                    return "s57";
-                if (tokenValue.equals("div"))
-                    return "s58";
-                break;
-            case 77:
-                if (tokenValue.equals("}"))
-                    return "s89";
-                break;
-            case 78:
-                if (tokenValue.equals(","))
-                    return "s90";
-                break;
-            case 79:
-                if (tokenValue.equals(","))
-                    return "s91"; // Comma between function arguments
-                break;
-            case 80:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                if (tokenValue.equals("not"))
-                    return "s59";
-                if (tokenValue.equals("sqrt"))
-                    return "s60";
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                    return "s53";
-                if (tokenValue.equals("grt"))
-                    return "s54";
-                if (tokenValue.equals("add"))
-                    return "s55";
-                if (tokenValue.equals("sub"))
-                    return "s56";
-                if (tokenValue.equals("mul"))
-                    return "s57";
-                if (tokenValue.equals("div"))
-                    return "s58";
-                break;
-            case 81:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                if (tokenValue.equals("not"))
-                    return "s59";
-                if (tokenValue.equals("sqrt"))
-                    return "s60";
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                    return "s53";
-                if (tokenValue.equals("grt"))
-                    return "s54";
-                if (tokenValue.equals("add"))
-                    return "s55";
-                if (tokenValue.equals("sub"))
-                    return "s56";
-                if (tokenValue.equals("mul"))
-                    return "s57";
-                if (tokenValue.equals("div"))
-                    return "s58";
-                break;
-            case 82:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                break;
-            case 83:
-                if (tokenValue.equals("else"))
-                    return "s97";
-                break;
-            case 84:
-                if (tokenValue.equals(","))
-                    return "s98";
-                break;
-            case 85:
-                if (tokenValue.equals(",")) return "s99";
-                break;
-            case 86:
-                if (tokenValue.equals("(")) return "s100";
-                break;
-            case 87:
-                if (tokenValue.equals(")")) return "s101";
-                break;
-            case 88:
-                if (tokenValue.equals("$"))
-                    return "r47";
-                if (tokenValue.equals("num"))
-                    return "s16";
-                if (tokenValue.equals("end"))
-                    return "r47";
-                if (tokenValue.equals("void"))
-                    return "s17";
-                break;
-            case 89:
-                if (tokenValue.equals("$"))
-                    return "r55";
-                if (tokenValue.equals("num"))
-                    return "r55";
-                if (tokenValue.equals("end"))
-                    return "r55";
-                if (tokenValue.equals("void"))
-                    return "r55";
-                break;
-            case 90:
-                if (tokenValue.equals("num"))
-                    return "s6";
-                if (tokenValue.equals("text"))
-                    return "s7";
-                break;
-            case 91:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                break;
-            case 92:
-                if (tokenValue.equals(")")) return "s106";
-                break;
-            case 93:
-                if (tokenValue.equals(","))
-                    return "r29";
-                if (tokenValue.equals(")"))
-                    return "r29";
-                break;
-            case 94:
-                if (tokenValue.equals(","))
-                    return "r30";
-                if (tokenValue.equals(")"))
-                    return "r30";
-                break;
-            case 95:
-                if (tokenValue.equals(","))
-                    return "s107";
-                break;
-            case 96:
-                if (tokenValue.equals(","))
-                    return "s108";
-                break;
-            case 97:
-                if (tokenValue.equals("begin"))
-                    return "s9";
-                break;
-            case 98:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                break;
-            case 99:
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                    return "s53";
-                if (tokenValue.equals("grt"))
-                    return "s54";
-                if (tokenValue.equals("add"))
-                    return "s55";
-                if (tokenValue.equals("sub"))
-                    return "s56";
-                if (tokenValue.equals("mul"))
-                    return "s57";
-                if (tokenValue.equals("div"))
-                    return "s58";
-                break;
-            case 100:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                break;
-            case 101:
-                if (tokenValue.equals("then"))
-                    return "r35";
-                break;
-            case 102:
-                if (tokenValue.equals("end"))
-                    return "s112";
-                break;
-            case 103:
-                if (tokenValue.equals("end"))
-                    return "r57";
-                break;
-            case 104:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                break;
-            case 105:
-                if (tokenValue.equals(","))
-                    return "s114";
-                break;
-            case 106:
-                if (tokenValue.equals(","))
-                    return "r27";
-                if (tokenValue.equals(";"))
-                    return "r27";
-                if (tokenValue.equals(")"))
-                    return "r27";
-                break;
-            case 107:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                if (tokenValue.equals("not"))
-                    return "s59";
-                if (tokenValue.equals("sqrt"))
-                    return "s60";
-                if (tokenValue.equals("or"))
-                    return "s51";
-                if (tokenValue.equals("and"))
-                    return "s52";
-                if (tokenValue.equals("eq"))
-                    return "s53";
-                if (tokenValue.equals("grt"))
-                    return "s54";
-                if (tokenValue.equals("add"))
-                    return "s55";
-                if (tokenValue.equals("sub"))
-                    return "s56";
-                if (tokenValue.equals("mul"))
-                    return "s57";
-                if (tokenValue.equals("div"))
-                    return "s58";
-                break;
-            case 108:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                if (tokenType.equals("n"))
-                    return "s41";
-                if (tokenType.equals("t"))
-                    return "s42";
-                break;
-            case 109:
-                if (tokenValue.equals(";"))
-                    return "r23";
-                break;
-            case 110:
-                if (tokenValue.equals(")"))
-                    return "s117";
-                break;
-            case 111:
-                if (tokenValue.equals(")"))
-                    return "s118";
-                break;
-            case 112:
-                if (tokenValue.equals("$"))
-                    return "r53";
-                if (tokenValue.equals("num"))
-                    return "r53";
-                if (tokenValue.equals("end"))
-                    return "r53";
-                if (tokenValue.equals("void"))
-                    return "r53";
-                break;
-            case 113:
-                if (tokenValue.equals(","))
-                    return "s119";
-                break;
-            case 114:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                break;
-            case 115:
-                if (tokenValue.equals(")"))
-                    return "s121";
-                break;
-            case 116:
-                if (tokenValue.equals(")"))
-                    return "s122";
-                break;
-            case 117:
-                if (tokenValue.equals(","))
-                    return "r33";
-                if (tokenValue.equals(")"))
-                    return "r33";
-                if (tokenValue.equals("then"))
-                    return "r33";
-                break;
-            case 118:
-                if (tokenValue.equals("then"))
-                    return "r34";
-                break;
-            case 119:
-                if (tokenValue.equals("num"))
-                    return "s6";
-                if (tokenValue.equals("text"))
-                    return "s7";
-                break;
-            case 120:
-                if (tokenValue.equals(")"))
-                    return "s124";
-                break;
-            case 121:
-                if (tokenValue.equals(","))
-                    return "r28";
-                if (tokenValue.equals(";"))
-                    return "r28";
-                if (tokenValue.equals(")")) // was ;
-                    return "r28";
-                break;
-            case 122:
-                if (tokenValue.equals(";"))
-                    return "r22";
-                break;
-            case 123:
-                if (tokenType.equals("v") && tokenValue.startsWith("V_"))
-                    return "s11";
-                break;
-            case 124:
-                if (tokenValue.equals("{"))
-                    return "r50";
-                break;
-            case 125:
-                if (tokenValue.equals(","))
-                    return "s126";
-                break;
-            case 126:
-                if (tokenValue.equals("begin"))
-                    return "r56";
-                break;
-                default:
-                return "\n Error: Unexpected token '" + token.value + "' (Type: " + token.type + ") at position " + currentTokenIndex + " in state " + state;
+    // Parses the tokens of node from the state it was started in and returns the new subtree, or NONE if the
+    // tokens do not parse to a single subtree of node's symbol. Subtrees of tree outside the edit are taken
+    // over as a whole, as if they had just been reduced.
+    private int parseSubtree(SyntaxTree tree, int node, int editStart, int editEnd) {
+        int last = tree.lastToken(node);
+        currentTokenIndex = tree.firstToken(node);
+        stack.clear();
+        stack.push(tree.state(node));
+        nodes.clear();
+        tree.startReplacement();
+        int firstNew = tree.size();
+        long stepLimit = (long) (last - currentTokenIndex + 3) * (tables.stateCount() + 1);
+        for (long step = 0; step < stepLimit; step++) {
+            steps++;
+            int state = stack.peek();
+            int old = reusable(tree, state, editStart, editEnd, last);
+            if (old != SyntaxTree.NONE) {
+                nodes.push(old);
+                stack.push(tables.gotoTable[state][tree.symbol(old) - ParseTables.TERMINAL_COUNT]);
+                currentTokenIndex = tree.lastToken(old) + 1;
+                continue;
+            }
+            int terminal = currentTerminal();
+            int action = tables.action[state][terminal];
+            int kind = ParseTables.kind(action);
+            if (kind == ParseTables.SHIFT && currentTokenIndex <= last) {
+                stack.push(ParseTables.target(action));
+                nodes.push(tree.addLeaf(terminal, currentTokenIndex, state));
+                currentTokenIndex++;
+            } else if (kind == ParseTables.REDUCE && tables.ruleLength[ParseTables.target(action)] < stack.size()) {
+                int ruleNumber = ParseTables.target(action);
+                int lhs = tables.ruleLhs[ruleNumber];
+                int rhsLength = tables.ruleLength[ruleNumber];
+                stack.pop(rhsLength);
+                int reduced = tree.addNode(lhs, nodes, rhsLength, stack.peek());
+                nodes.pop(rhsLength);
+                nodes.push(reduced);
+                int gotoState = tables.gotoTable[stack.peek()][lhs];
+                if (gotoState == -1) {
+                    break;
+                }
+                stack.push(gotoState);
+                if (stack.size() == 2 && currentTokenIndex == last + 1
+                        && ParseTables.TERMINAL_COUNT + lhs == tree.symbol(node)) {
+                    builtNodes = tree.size() - firstNew;
+                    return reduced;
+                }
+            } else {
+                break; // An error, or the tokens reach past the subtree or reduce into what comes before it
+            }
         }
-        return "\n Error: No valid action found for token '" + token.value + "' (Type: " + token.type + ") at position " + currentTokenIndex + " in state " + state;
+        tree.rollback();
+        return SyntaxTree.NONE;
     }
 
-    private int getGotoState(int state, String nonTerminal) {
-        switch (state) {
-            case 0:
-                if (nonTerminal.equals("PROG"))
-                    return 1;
-                break;
-            case 2:
-                if (nonTerminal.equals("GLOBVARS"))
-                    return 4;
-                if (nonTerminal.equals("VTYP"))
-                    return 5;
-                break;
-            case 4:
-                if (nonTerminal.equals("ALGO"))
-                    return 8;
-                break;
-            case 5:
-                if (nonTerminal.equals("VNAME"))
-                    return 10;
-                break;
-            case 8:
-                if (nonTerminal.equals("FUNCTIONS"))
-                    return 12;
-                if (nonTerminal.equals("DECL"))
-                    return 13;
-                if (nonTerminal.equals("HEADER"))
-                    return 14;
-                if (nonTerminal.equals("FTYP"))
-                    return 15;
-                break;
-            case 9:
-                if (nonTerminal.equals("VNAME"))
-                    return 26;
-                if (nonTerminal.equals("INSTRUC"))
-                    return 18;
-                if (nonTerminal.equals("COMMAND"))
-                    return 19;
-                if (nonTerminal.equals("ASSIGN"))
-                    return 23;
-                if (nonTerminal.equals("CALL"))
-                    return 24;
-                if (nonTerminal.equals("BRANCH"))
-                    return 25;
-                break;
-            case 13:
-                if (nonTerminal.equals("FUNCTIONS"))
-                    return 31;
-                if (nonTerminal.equals("DECL"))
-                    return 13;
-                if (nonTerminal.equals("HEADER"))
-                    return 14;
-                if (nonTerminal.equals("FTYP"))
-                    return 15;
-                break;
-            case 14:
-                if (nonTerminal.equals("BODY"))
-                    return 32;
-                if (nonTerminal.equals("PROLOG"))
-                    return 33;
-                break;
-            case 15:
-                if (nonTerminal.equals("FNAME"))
-                    return 35;
-                break;
-            case 22:
-                if (nonTerminal.equals("ATOMIC"))
-                    return 38;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                break;
-            // case 27:
-            //     if (nonTerminal.equals("ATOMIC"))
-            //         return 45;
-            //     if (nonTerminal.equals("CONST"))
-            //         return 40;
-            //     if (nonTerminal.equals("VNAME"))
-            //         return 39;
-            //     break;
-            case 28:
-                if (nonTerminal.equals("COND"))
-                    return 46;
-                if (nonTerminal.equals("SIMPLE"))
-                    return 47;
-                if (nonTerminal.equals("COMPOSIT"))
-                    return 48;
-                if (nonTerminal.equals("UNOP"))
-                    return 50;
-                if (nonTerminal.equals("BINOP"))
-                    return 49;
-                break;
-            case 30:
-                if (nonTerminal.equals("GLOBVARS"))
-                    return 61;
-                if (nonTerminal.equals("VTYP"))
-                    return 5;
-                break;
-            case 33:
-                if (nonTerminal.equals("VTYP"))
-                    return 63;
-                if (nonTerminal.equals("LOCVARS"))
-                    return 62;
-                break;
-            case 37:
-                if (nonTerminal.equals("VNAME"))
-                    return 26;
-                if (nonTerminal.equals("INSTRUC"))
-                    return 65;
-                if (nonTerminal.equals("COMMAND"))
-                    return 19;
-                if (nonTerminal.equals("ASSIGN"))
-                    return 23;
-                if (nonTerminal.equals("CALL"))
-                    return 24;
-                if (nonTerminal.equals("BRANCH"))
-                    return 25;
-                if (nonTerminal.equals("FNAME"))
-                    return 27;
-                break;
-            case 44:
-                if (nonTerminal.equals("ATOMIC"))
-                    return 68;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("CALL"))
-                    return 69;
-                if (nonTerminal.equals("TERM"))
-                    return 67;
-                if (nonTerminal.equals("OP"))
-                    return 70;
-                if (nonTerminal.equals("UNOP"))
-                    return 71;
-                if (nonTerminal.equals("BINOP"))
-                    return 72;
-                if (nonTerminal.equals("FNAME"))
-                    return 27;
-                break;
-            case 45:
-                if (nonTerminal.equals("ATOMIC"))
-                    return 73;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                break;
-            case 62:
-                if (nonTerminal.equals("ALGO"))
-                    return 77;
-                break;
-            case 63:
-                if (nonTerminal.equals("VNAME"))
-                    return 78;
-                break;
-            case 64:
-                if (nonTerminal.equals("VNAME"))
-                    return 79;
-                break;
-            // case 72:
-            //     if (nonTerminal.equals("VNAME"))
-            //         return 39;
-            //     if (nonTerminal.equals("ATOMIC"))
-            //         return 83;
-            //     if (nonTerminal.equals("CONST"))
-            //         return 40;
-            //     if (nonTerminal.equals("OP"))
-            //         return 84;
-            //     if (nonTerminal.equals("ARG"))
-            //         return 82;
-            //     break;
-            // case 73:
-            //     if (nonTerminal.equals("VNAME"))
-            //         return 39;
-            //     if (nonTerminal.equals("ATOMIC"))
-            //         return 83;
-            //     if (nonTerminal.equals("CONST"))
-            //         return 40;
-            //     if (nonTerminal.equals("OP"))
-            //         return 84;
-            //     if (nonTerminal.equals("ARG"))
-            //         return 85;
-            //     break;
-            // case 74:
-            //     if (nonTerminal.equals("VNAME"))
-            //         return 39;
-            //     if (nonTerminal.equals("ATOMIC"))
-            //         return 83;
-            //     if (nonTerminal.equals("CONST"))
-            //         return 40;
-            //     break;
-            case 74:
-                if (nonTerminal.equals("ALGO"))
-                    return 83;
-                break;
-            case 75:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 84;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                if (nonTerminal.equals("SIMPLE"))
-                    return 85;
-                if (nonTerminal.equals("BINOP"))
-                    return 86;
-                break;
-            case 76:
-                if (nonTerminal.equals("SIMPLE"))
-                    return 87;
-                if (nonTerminal.equals("BINOP"))
-                    return 86;
-                break;
-            case 77:
-                if (nonTerminal.equals("EPILOG"))
-                    return 88;
-                break;
-            case 80:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 93;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                if (nonTerminal.equals("OP"))
-                    return 94;
-                if (nonTerminal.equals("ARG"))
-                    return 92;
-                if (nonTerminal.equals("UNOP"))
-                    return 71;
-                if (nonTerminal.equals("BINOP"))
-                    return 72;
-                break;
-            case 81:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 93;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                if (nonTerminal.equals("OP"))
-                    return 94;
-                if (nonTerminal.equals("ARG"))
-                    return 95;
-                if (nonTerminal.equals("UNOP"))
-                    return 71;
-                if (nonTerminal.equals("BINOP"))
-                    return 72;
-                break;
-            case 82:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 96;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                break;
-            // case 88:
-            //     if (nonTerminal.equals("ATOMIC"))
-            //         return 99;
-            //     if (nonTerminal.equals("CONST"))
-            //         return 40;
-            //     if (nonTerminal.equals("VNAME"))
-            //         return 39;
-            //     break;
-            case 88:
-                if (nonTerminal.equals("FUNCTIONS"))
-                    return 103;
-                if (nonTerminal.equals("DECL"))
-                    return 13;
-                if (nonTerminal.equals("HEADER"))
-                    return 14;
-                if (nonTerminal.equals("FTYP"))
-                    return 15;
-                if (nonTerminal.equals("SUBFUNCS"))
-                    return 102;
-                break;
-            case 90:
-                if (nonTerminal.equals("VTYP"))
-                    return 104;
-                break;
-            case 91:
-                if (nonTerminal.equals("VNAME"))
-                    return 105;
-                break;
-            // case 96:
-            //     if (nonTerminal.equals("VNAME"))
-            //         return 39;
-            //     if (nonTerminal.equals("ATOMIC"))
-            //         return 83;
-            //     if (nonTerminal.equals("CONST"))
-            //         return 40;
-            //     if (nonTerminal.equals("OP"))
-            //         return 84;
-            //     if (nonTerminal.equals("ARG"))
-            //         return 106;
-            //     break;
-            // case 97:
-            //     if (nonTerminal.equals("VNAME"))
-            //         return 39;
-            //     if (nonTerminal.equals("ATOMIC"))
-            //         return 107;
-            //     if (nonTerminal.equals("CONST"))
-            //         return 40;
-            //     break;
-            case 97:
-                if (nonTerminal.equals("ALGO"))
-                    return 109;
-                break;
-            case 98:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 110;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                break;
-            case 99:
-                if (nonTerminal.equals("SIMPLE"))
-                    return 111;
-                if (nonTerminal.equals("BINOP"))
-                    return 86;
-                break;
-            case 100:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 84;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                break;
-            case 104:
-                if (nonTerminal.equals("VNAME"))
-                    return 113;
-                break;
-            case 107:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 93;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                if (nonTerminal.equals("OP"))
-                    return 94;
-                if (nonTerminal.equals("ARG"))
-                    return 115;
-                if (nonTerminal.equals("UNOP"))
-                    return 71;
-                if (nonTerminal.equals("BINOP"))
-                    return 72;
-                break;
-            case 108:
-                if (nonTerminal.equals("VNAME"))
-                    return 39;
-                if (nonTerminal.equals("ATOMIC"))
-                    return 116;
-                if (nonTerminal.equals("CONST"))
-                    return 40;
-                break;
-            case 114:
-                if (nonTerminal.equals("VNAME"))
-                    return 120;
-                break;
-            case 119:
-                if (nonTerminal.equals("VTYP"))
-                    return 123;
-                break;
-            case 123:
-                if (nonTerminal.equals("VNAME"))
-                    return 125;
-                break;
-            default:
-                break;
+    // The largest subtree of tree that starts at the current token, was started from state and lies
+    // within last. Neither its tokens nor the one after it may be part of the edit.
+    private int reusable(SyntaxTree tree, int state, int editStart, int editEnd, int last) {
+        int first = currentTokenIndex;
+        if (first > last || (first >= editStart && first < editEnd)) {
+            return SyntaxTree.NONE;
+        }
+        int best = SyntaxTree.NONE;
+        for (int node = tree.leaf(first); startsSubtree(tree, node); ) {
+            node = tree.parent(node);
+            int end = tree.lastToken(node);
+            if (end > last || (first < editStart && end + 1 >= editStart)) {
+                break; // And so does every ancestor
+            }
+            if (tree.state(node) == state && tables.gotoTable[state][tree.symbol(node) - ParseTables.TERMINAL_COUNT] != -1) {
+                best = node;
+            }
+        }
+        return best;
+    }
 
+    // Whether the parent of node starts with the same token, i.e. only empty subtrees come before node
+    private static boolean startsSubtree(SyntaxTree tree, int node) {
+        int parent = tree.parent(node);
+        if (parent == SyntaxTree.NONE) {
+            return false;
+        }
+        for (int child = tree.firstChild(parent); child != node; child = tree.nextSibling(child)) {
+            if (tree.lastToken(child) != SyntaxTree.NONE) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        // If no GOTO state is found, return an error state
-        return -1;
+    private static boolean sameToken(TokenBuffer a, int i, TokenBuffer b, int j, boolean sameLexemes) {
+        return a.id(i) == b.id(j) && a.typeOrdinal(i) == b.typeOrdinal(j)
+                && (sameLexemes ? a.lexemeId(i) == b.lexemeId(j) : a.word(i).equals(b.word(j)));
     }
 
-    private Reduction reduce(int ruleNumber) {
-        switch (ruleNumber) {
-            case 0:
-                return new Reduction("S", 2);////is it really 2????????????
-            case 1:
-                return new Reduction("PROG", 4); // PROG -> main GLOBVARS ALGO FUNCTIONS
-            case 2:
-                return new Reduction("GLOBVARS", 0); // GLOBVARS -> ε
-            case 3:
-                return new Reduction("GLOBVARS", 4); // GLOBVARS -> VTYP VNAME , GLOBVARS
-            case 4:
-                return new Reduction("VTYP", 1); // VTYP -> num
-            case 5:
-                return new Reduction("VTYP", 1); // VTYP -> text
-            case 6:
-                return new Reduction("VNAME", 1); // VNAME -> v
-            case 7:
-                return new Reduction("ALGO", 3); // ALGO -> begin INSTRUC end
-            case 8:
-                return new Reduction("INSTRUC", 0); // INSTRUC -> ε
-            case 9:
-                return new Reduction("INSTRUC", 3); // INSTRUC -> COMMAND ; INSTRUC
-            case 10:
-                return new Reduction("COMMAND", 1); // COMMAND -> skip //here
-            case 11:
-                return new Reduction("COMMAND", 1); // COMMAND -> halt
-            case 12:
-                return new Reduction("COMMAND", 2); // COMMAND -> return ATOMIC
-            case 13:
-                return new Reduction("COMMAND", 1); // COMMAND -> ASSIGN
-            case 14:
-                return new Reduction("COMMAND", 1); // COMMAND -> CALL
-            case 15:
-                return new Reduction("COMMAND", 1); // COMMAND -> BRANCH
-            case 16:
-                return new Reduction("ATOMIC", 1); // ATOMIC -> VNAME
-            case 17:
-                return new Reduction("ATOMIC", 1); // ATOMIC -> CONST
-            case 18:
-                return new Reduction("CONST", 1); // CONST -> N
-            case 19:
-                return new Reduction("CONST", 1); // CONST -> T
-            case 20:
-                return new Reduction("ASSIGN", 3); // ASSIGN -> VNAME input ( )
-            case 21:
-                return new Reduction("ASSIGN", 3); // ASSIGN -> VNAME = OP
-            case 22:
-                return new Reduction("CALL", 8); // CALL -> FNAME ( ATOMIC , ATOMIC, ATOMIC )
-            case 23:
-                return new Reduction("BRANCH", 6); // BRANCH -> if COND then ALGO else ALGO
-            case 24:
-                return new Reduction("TERM", 1); // TERM -> ATOMIC
-            case 25:
-                return new Reduction("TERM", 1); // TERM -> CALL
-            case 26:
-                return new Reduction("TERM", 1); // TERM -> OP
-            case 27:
-                return new Reduction("OP", 4); // OP -> UNOP (ARG)
-            case 28:
-                return new Reduction("OP", 6); // OP -> BINOP (ARG , ARG )
-            case 29:
-                return new Reduction("ARG", 1); // ARG -> ATOMIC
-            case 30:
-                return new Reduction("ARG", 1); // ARG -> OP
-            case 31:
-                return new Reduction("COND", 1); // COND -> SIMPLE
-            case 32:
-                return new Reduction("COND", 1); // COND -> COMPOSIT
-            case 33:
-                return new Reduction("SIMPLE", 6); // SIMPLE -> BINOP ( ATOMIC , ATOMIC)
-            case 34:
-                return new Reduction("COMPOSIT", 6); // COMPOSIT -> BINOP ( SIMPLE , SIMPLE)
-            case 35:
-                return new Reduction("COMPOSIT", 4); // COMPOSIT -> UNOP (SIMPLE)
-            case 36:
-                return new Reduction("UNOP", 1); // UNOP -> not
-            case 37:
-                return new Reduction("UNOP", 1); // UNOP -> sqrt
-            case 38:
-                return new Reduction("BINOP", 1); // BINOP -> or
-            case 39:
-                return new Reduction("BINOP", 1); // BINOP -> and
-            case 40:
-                return new Reduction("BINOP", 1); // BINOP -> eq
-            case 41:
-                return new Reduction("BINOP", 1); // BINOP -> grt
-            case 42:
-                return new Reduction("BINOP", 1); // BINOP -> add
-            case 43:
-                return new Reduction("BINOP", 1); // BINOP -> sub
-            case 44:
-                return new Reduction("BINOP", 1); // BINOP -> mul
-            case 45:
-                return new Reduction("BINOP", 1); // BINOP -> div
-            case 46:
-                return new Reduction("FNAME", 1); // FNAME -> F
-            case 47:
-                return new Reduction("FUNCTIONS", 0); // FUNCTIONS -> ε
-            case 48:
-                return new Reduction("FUNCTIONS", 2); // FUNCTIONS -> FUNCTIONS DECL
-            case 49:
-                return new Reduction("DECL", 2); // DECL -> HEADER BODY
-            case 50:
-                return new Reduction("HEADER", 9); // HEADER -> FTYP FNAME (VNAME , VNAME , VNAME)
-            case 51:
-                return new Reduction("FTYP", 1); // FTYP -> num
-            case 52:
-                return new Reduction("FTYP", 1); // FTYP -> void
-            case 53:
-                return new Reduction("BODY", 6); // BODY -> PROLOG LOCVARS ALGO EPILOG SUBFUNCS end
-            case 54:
-                return new Reduction("PROLOG", 1); // PROLOG -> {
-            case 55:
-                return new Reduction("EPILOG", 1); // EPILOG -> }
-            case 56:
-                return new Reduction("LOCVARS", 9); // LOCVARS -> VTYP VNAME , VTYP VNAME , VTYP VNAME
-            case 57:
-                return new Reduction("SUBFUNCS", 1); //SUBFUNCS -> FUNCTIONS
-            default:
-                throw new RuntimeException("Unknown rule number: " + ruleNumber);
+    // Panic mode: pops the stack back to the nearest state with a GOTO on a sync non-terminal, skips tokens up
+    // to one that can follow it and goes on as if it had been reduced. Blocks and brackets that open among the
+    // skipped tokens are skipped up to where they close, unless that finds nowhere to resume. The popped
+    // nodes and the skipped tokens become the children of an error node. Returns false if no token can follow.
+    private boolean recover(SyntaxTree tree, int state) throws IOException {
+        if (xmlWriter != null) {
+            xmlWriter.abort();
+            xmlWriter = null;
         }
+        if (shiftsSinceError > 0) {
+            diagnostics.add(syntaxError(state)); // Not again for an error right where the last recovery resumed
+        }
+        // Failing again on the token the last recovery resumed at, so skip it this time
+        int first = currentTokenIndex == lastErrorToken ? currentTokenIndex + 1 : currentTokenIndex;
+        lastErrorToken = currentTokenIndex;
+
+        IntStack targets = new IntStack();
+        IntStack symbols = new IntStack();
+        boolean[] seen = new boolean[tables.stateCount()];
+        for (int pass = 0; pass < 2; pass++) {
+            Arrays.fill(seen, false);
+            for (int depth = 0; depth < stack.size(); depth++) {
+                // The states the sync GOTOs of this stack entry lead to, each tried only from its nearest entry
+                int below = stack.get(stack.size() - 1 - depth);
+                targets.clear();
+                symbols.clear();
+                for (int symbol : syncSymbols) {
+                    int target = tables.gotoTable[below][symbol];
+                    if (target != -1 && !seen[target]) {
+                        seen[target] = true;
+                        targets.push(target);
+                        symbols.push(symbol);
+                    }
+                }
+                // Of the ways to resume here, the one that skips the fewest tokens
+                int best = SyntaxTree.NONE;
+                int bestResume = Integer.MAX_VALUE;
+                for (int c = 0; c < targets.size(); c++) {
+                    int resume = resumeToken(first, bestResume, depth, targets.get(c), pass == 0);
+                    if (resume != SyntaxTree.NONE) {
+                        best = c;
+                        bestResume = resume;
+                    }
+                }
+                if (best != SyntaxTree.NONE) {
+                    resume(tree, depth, symbols.get(best), targets.get(best), bestResume);
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
-    private static class Reduction {
-        String lhs;
-        int rhsLength;
+    private void resume(SyntaxTree tree, int depth, int symbol, int state, int resume) {
+        stack.pop(depth);
+        for (int skipped = currentTokenIndex; skipped < resume; skipped++) {
+            nodes.push(tree.addLeaf(terminal(skipped), skipped, SyntaxTree.NONE));
+        }
+        int count = depth + resume - currentTokenIndex;
+        int node = tree.addErrorNode(symbol, nodes, count);
+        nodes.pop(count);
+        nodes.push(node);
+        stack.push(state);
+        currentTokenIndex = resume;
+        shiftsSinceError = 0;
+    }
 
-        Reduction(String lhs, int rhsLength) {
-            this.lhs = lhs;
-            this.rhsLength = rhsLength;
+    // The first token from first on, and before limit, that the parser can go on with once the top depth states
+    // are replaced by state, if nested outside anything opened after first. NONE if there is none.
+    private int resumeToken(int first, int limit, int depth, int state, boolean nested) throws IOException {
+        int blocks = 0;
+        int brackets = 0;
+        for (int index = first; index < limit && (pullToken(index) || index == tokens.size()); index++) {
+            int terminal = terminal(index);
+            if (blocks == 0 && brackets == 0 && canShift(terminal, depth, state)) {
+                return index;
+            }
+            if (!nested) {
+                continue;
+            }
+            switch (terminal) {
+                case LexemeTable.LPAREN:
+                    brackets++;
+                    break;
+                case LexemeTable.RPAREN:
+                    brackets = Math.max(brackets - 1, 0);
+                    break;
+                case LexemeTable.BEGIN:
+                case LexemeTable.LBRACE:
+                    brackets = 0;
+                    blocks++;
+                    break;
+                case LexemeTable.END:
+                case LexemeTable.RBRACE:
+                    brackets = 0;
+                    blocks = Math.max(blocks - 1, 0);
+                    break;
+                case LexemeTable.SEMICOLON:
+                case LexemeTable.THEN:
+                case LexemeTable.ELSE:
+                    brackets = 0; // Brackets only hold atoms and operations, so one left open ends here
+                    break;
+            }
         }
+        return SyntaxTree.NONE;
     }
 
-    private Element createRootNode(Element innerNode) {
-        Element root = doc.createElement("ROOT");
-        root.appendChild(createUNID());
-        root.appendChild(createSymb(innerNode.getAttribute("symbol")));
-        root.appendChild(createChildren(innerNode));
-        return root;
+    // Reads tokens from source up to index, returns false if the input ends before it
+    private boolean pullToken(int index) throws IOException {
+        while (source != null && tokens.size() <= index) {
+            if (!source.next(tokens)) {
+                closeTokens();
+            }
+        }
+        return index < tokens.size();
     }
 
-    private Element createInnerNode(Reduction reduction) {
-        Element node = doc.createElement("IN");
-        node.setAttribute("symbol", reduction.lhs);
-        node.appendChild(createParent());
-        node.appendChild(createUNID());
-        node.appendChild(createSymb(reduction.lhs));
-        node.appendChild(createChildren(reduction.rhsLength));
-        return node;
+    // Whether the parser, with the top depth states replaced by state, would shift terminal after the reduces
+    // it leads to. SLR reduces on every terminal that can follow the rule, so an ACTION entry alone does not
+    // mean the terminal is shifted in the end.
+    private boolean canShift(int terminal, int depth, int state) {
+        simulated.clear();
+        simulated.push(state);
+        for (int i = 0; i < tables.stateCount() * 2; i++) {
+            int action = tables.action[simulated.peek()][terminal];
+            int kind = ParseTables.kind(action);
+            if (kind != ParseTables.REDUCE) {
+                return kind != ParseTables.ERROR;
+            }
+            int rule = ParseTables.target(action);
+            int length = tables.ruleLength[rule];
+            if (length >= simulated.size()) {
+                depth += length - simulated.size();
+                simulated.clear();
+            } else {
+                simulated.pop(length);
+            }
+            int below = simulated.isEmpty() ? stack.get(stack.size() - 1 - depth) : simulated.peek();
+            int gotoState = tables.gotoTable[below][tables.ruleLhs[rule]];
+            if (gotoState == -1) {
+                return false;
+            }
+            simulated.push(gotoState);
+        }
+        return false;
     }
 
-    private Element createLeafNode(Token token) {
-        Element leaf = doc.createElement("LEAF");
-        leaf.appendChild(createParent());
-        leaf.appendChild(createUNID());
-        Element terminal = doc.createElement("TERMINAL");
-        terminal.setTextContent(token.value);
-        leaf.appendChild(terminal);
-        return leaf;
+    private Diagnostic syntaxError(int state) {
+        List<String> names = new ArrayList<>();
+        for (int terminal = 0; terminal < ParseTables.TERMINAL_COUNT; terminal++) {
+            if (canShift(terminal, 1, state)) {
+                names.add(terminalName(terminal));
+            }
+        }
+        String expected = names.size() < 2 ? String.join("", names)
+                : String.join(", ", names.subList(0, names.size() - 1)) + " or " + names.get(names.size() - 1);
+        String found = currentTokenIndex < tokens.size() ? "'" + currentTokenValue() + "' (token " + currentTokenIndex
+                + ", " + currentTokenType() + ")" : "end of input";
+        int line = tokens.size() == 0 ? 0 : tokens.line(Math.min(currentTokenIndex, tokens.size() - 1));
+        return new Diagnostic(line, 0, "Syntax error: expected " + expected + " but found " + found);
     }
 
-    private Element createParent() {
-        Element parent = doc.createElement("PARENT");
-        parent.setTextContent(String.valueOf(nodeId - 1));
-        return parent;
+    private String terminalName(int terminal) {
+        switch (terminal - ParseTables.V) {
+            case 0:
+                return "a variable";
+            case 1:
+                return "a function name";
+            case 2:
+                return "a number";
+            case 3:
+                return "a string";
+        }
+        return terminal == LexemeTable.DOLLAR ? "end of input" : "'" + tokens.lexemes().get(terminal) + "'";
     }
 
-    private Element createUNID() {
-        Element unid = doc.createElement("UNID");
-        unid.setTextContent(String.valueOf(nodeId++));
-        return unid;
+    // Every token (and the end marker) is shifted once, and between two shifts the parser can only
+    // reduce through each state once, so a valid parse never needs more steps than this. Recovery
+    // resumes at most twice at each token, and reduces through each state at most once after that.
+    private long stepLimit() {
+        long limit = (long) (tokens.size() + 2) * (tables.stateCount() + 1) * (recover ? 3 : 1);
+        return maxSteps > 0 ? Math.min(limit, maxSteps) : limit;
     }
 
-    private Element createSymb(String symbol) {
-        Element symb = doc.createElement("SYMB");
-        symb.setTextContent(symbol);
-        return symb;
+    // Keywords and operators are their own terminals (their lexeme ID), everything else is a token class
+    private int currentTerminal() {
+        return terminal(currentTokenIndex);
     }
 
-    private Element createChildren(int count) {
-        Element children = doc.createElement("CHILDREN");
-        for (int i = 0; i < count; i++) {
-            Element id = doc.createElement("ID");
-            id.setTextContent(String.valueOf(nodeId - count + i));
-            children.appendChild(id);
+    private int terminal(int index) {
+        if (index >= tokens.size()) {
+            return LexemeTable.DOLLAR;
+        }
+        switch (tokens.type(index)) {
+            case V:
+                return ParseTables.V;
+            case F:
+                return ParseTables.F;
+            case N:
+                return ParseTables.N;
+            case T:
+                return ParseTables.T;
+            default:
+                int symbol = tokens.lexemeId(index);
+                if (symbol == LexemeTable.LST) {
+                    return LexemeTable.LESS;
+                }
+                return LexemeTable.isReserved(symbol) ? symbol : LexemeTable.LST; // No state has an action on LST
         }
-        return children;
     }
 
-    private Element createChildren(Element node) {
-        Element children = doc.createElement("CHILDREN");
-        Element id = doc.createElement("ID");
-        id.setTextContent(node.getElementsByTagName("UNID").item(0).getTextContent());
-        children.appendChild(id);
-        return children;
+    private String currentTokenValue() {
+        return currentTokenIndex < tokens.size() ? tokens.word(currentTokenIndex) : EOF_VALUE;
     }
 
-    private void writeOutput(Element root, String outputFile) throws Exception {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-        DOMSource source = new DOMSource(doc);
-        StreamResult result = new StreamResult(new File(outputFile));
-        transformer.transform(source, result);
+    private String currentTokenType() {
+        return currentTokenIndex < tokens.size() ? TYPE_NAMES[tokens.typeOrdinal(currentTokenIndex)] : EOF_TYPE;
+    }
+
+    // The action as the parser trace has always shown it, e.g. s11, r6 or acc
+    private String actionName(int action, int state) {
+        switch (ParseTables.kind(action)) {
+            case ParseTables.SHIFT:
+                return "s" + ParseTables.target(action);
+            case ParseTables.REDUCE:
+                return "r" + ParseTables.target(action);
+            case ParseTables.ACCEPT:
+                return "acc";
+            default:
+                return "\n Error: No valid action found for token '" + currentTokenValue() + "' (Type: " + currentTokenType()
+                        + ") at position " + currentTokenIndex + " in state " + state;
+        }
     }
 
     public static void main(String[] args) {
+        // Usage: java SLRParser [--trace] [--recover] [--max-steps <n>] [token-file [output-file]], a .tok token file is read as binary
         SLRParser parser = new SLRParser();
-        parser.parse();
+        parser.setListener(new RingBufferListener(RECENT_STEPS));
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--trace")) {
+                parser.setListener(new ConsoleTraceListener(System.out));
+            } else if (args[i].equals("--recover")) {
+                parser.setRecover(true);
+            } else if (args[i].equals("--max-steps") && i + 1 < args.length) {
+                parser.setMaxSteps(Long.parseLong(args[++i]));
+            } else {
+                files.add(args[i]);
+            }
+        }
+        parser.parse(files.size() > 0 ? files.get(0) : INPUT_FILE, files.size() > 1 ? files.get(1) : OUTPUT_FILE);
     }
 }
\ No newline at end of file
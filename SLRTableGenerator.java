@@ -0,0 +1,306 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Builds the SLR(1) tables for SLRParser from a grammar file: the canonical LR(0) item sets give the
+// states and shifts, FOLLOW sets decide where each completed rule is reduced.
+public class SLRTableGenerator {
+    private final List<String> ruleText = new ArrayList<>();
+    private final List<Integer> lhs = new ArrayList<>();     // Non-terminal index of each rule
+    private final List<int[]> rhs = new ArrayList<>();       // Symbols of each rule, see symbol()
+    private final List<String> nonterminals = new ArrayList<>();
+    private final Map<String, Integer> terminalIds = new HashMap<>();
+    private final List<String> conflicts = new ArrayList<>();
+
+    // Item sets, each a sorted array of items packed as rule << 8 | dot
+    private final List<int[]> states = new ArrayList<>();
+    private final Map<String, Integer> stateIds = new HashMap<>();
+    private final List<Map<Integer, Integer>> transitions = new ArrayList<>();
+
+    public static void main(String[] args) {
+        String grammarFile = args.length > 0 ? args[0] : "RecSPL.grammar";
+        String outputFile = args.length > 1 ? args[1] : ParseTables.TABLE_FILE;
+        try {
+            SLRTableGenerator generator = new SLRTableGenerator();
+            generator.readGrammar(grammarFile);
+            ParseTables tables = generator.build();
+            for (String conflict : generator.conflicts) {
+                System.err.println(conflict);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+                tables.write(out);
+            }
+            System.out.println(tables.stateCount() + " states, " + generator.ruleText.size() + " rules, "
+                    + generator.conflicts.size() + " conflict(s). Tables written to " + outputFile);
+            if (!generator.conflicts.isEmpty()) {
+                System.exit(1);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error generating parser tables: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public void readGrammar(String grammarFile) throws IOException {
+        List<String[]> productions = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(grammarFile, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int arrow = line.indexOf("->");
+                if (arrow <= 0) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " is not a production: " + line);
+                }
+                String left = line.substring(0, arrow).trim();
+                String right = line.substring(arrow + 2).trim();
+                productions.add(new String[] { left, right });
+                if (!nonterminals.contains(left)) {
+                    nonterminals.add(left);
+                }
+                ruleText.add(left + " -> " + (right.isEmpty() ? "ε" : right));
+            }
+        }
+        if (productions.isEmpty()) {
+            throw new IllegalArgumentException(grammarFile + " has no productions");
+        }
+
+        LexemeTable lexemes = new LexemeTable();
+        for (String[] production : productions) {
+            lhs.add(nonterminals.indexOf(production[0]));
+            String[] symbols = production[1].isEmpty() ? new String[0] : production[1].split("\\s+");
+            int[] encoded = new int[symbols.length];
+            for (int i = 0; i < symbols.length; i++) {
+                encoded[i] = symbol(symbols[i], lexemes);
+            }
+            rhs.add(encoded);
+        }
+    }
+
+    // Terminals keep their parser terminal ID, non-terminals come after all terminals
+    private int symbol(String name, LexemeTable lexemes) {
+        int nonterminal = nonterminals.indexOf(name);
+        if (nonterminal >= 0) {
+            return ParseTables.TERMINAL_COUNT + nonterminal;
+        }
+        switch (name) {
+            case "V":
+                return ParseTables.V;
+            case "F":
+                return ParseTables.F;
+            case "N":
+                return ParseTables.N;
+            case "T":
+                return ParseTables.T;
+        }
+        int id = lexemes.find(name);
+        if (!LexemeTable.isReserved(id) || id == LexemeTable.LST) {
+            throw new IllegalArgumentException("Unknown terminal '" + name + "'");
+        }
+        terminalIds.put(name, id);
+        return id;
+    }
+
+    public ParseTables build() {
+        buildStates();
+        boolean[] nullable = new boolean[nonterminals.size()];
+        BitSet[] first = new BitSet[nonterminals.size()];
+        BitSet[] follow = new BitSet[nonterminals.size()];
+        computeSets(nullable, first, follow);
+
+        int[][] action = new int[states.size()][ParseTables.TERMINAL_COUNT];
+        int[][] gotoTable = new int[states.size()][nonterminals.size()];
+        for (int s = 0; s < states.size(); s++) {
+            Arrays.fill(gotoTable[s], -1);
+            for (Map.Entry<Integer, Integer> transition : transitions.get(s).entrySet()) {
+                int symbol = transition.getKey();
+                if (symbol >= ParseTables.TERMINAL_COUNT) {
+                    gotoTable[s][symbol - ParseTables.TERMINAL_COUNT] = transition.getValue();
+                } else {
+                    action[s][symbol] = ParseTables.shift(transition.getValue());
+                }
+            }
+            for (int item : closure(states.get(s))) {
+                int rule = item >> 8;
+                if ((item & 0xFF) < rhs.get(rule).length) {
+                    continue;
+                }
+                if (rule == 0) {
+                    // The start rule ends with the end marker, so it is complete once $ was shifted
+                    action[s][LexemeTable.DOLLAR] = ParseTables.ACCEPT;
+                    continue;
+                }
+                BitSet lookahead = follow[lhs.get(rule)];
+                for (int t = lookahead.nextSetBit(0); t >= 0; t = lookahead.nextSetBit(t + 1)) {
+                    action[s][t] = resolve(s, t, action[s][t], ParseTables.reduce(rule));
+                }
+            }
+        }
+
+        int[] ruleLhs = new int[lhs.size()];
+        int[] ruleLength = new int[lhs.size()];
+        for (int r = 0; r < lhs.size(); r++) {
+            ruleLhs[r] = lhs.get(r);
+            ruleLength[r] = rhs.get(r).length;
+        }
+        return new ParseTables(action, gotoTable, ruleLhs, ruleLength, nonterminals.toArray(new String[0]));
+    }
+
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+
+    // Shifts win over reduces and the earlier rule wins between two reduces, as in yacc
+    private int resolve(int state, int terminal, int existing, int reduce) {
+        if (existing == ParseTables.ERROR) {
+            return reduce;
+        }
+        int rule = ParseTables.target(reduce);
+        if (ParseTables.kind(existing) == ParseTables.SHIFT) {
+            conflicts.add("Shift/reduce conflict in state " + state + " on '" + terminalName(terminal)
+                    + "': shift " + ParseTables.target(existing) + " or reduce " + ruleText.get(rule));
+            return existing;
+        }
+        int other = ParseTables.target(existing);
+        conflicts.add("Reduce/reduce conflict in state " + state + " on '" + terminalName(terminal)
+                + "': " + ruleText.get(other) + " or " + ruleText.get(rule));
+        return other < rule ? existing : reduce;
+    }
+
+    private void buildStates() {
+        addState(new int[] { 0 }); // S -> . PROG $
+        for (int s = 0; s < states.size(); s++) {
+            // Group the items that can move over each symbol, in symbol order so state numbers are stable
+            TreeMap<Integer, List<Integer>> moves = new TreeMap<>();
+            for (int item : closure(states.get(s))) {
+                int[] symbols = rhs.get(item >> 8);
+                int dot = item & 0xFF;
+                if (dot < symbols.length) {
+                    moves.computeIfAbsent(symbols[dot], k -> new ArrayList<>()).add(item + 1);
+                }
+            }
+            for (Map.Entry<Integer, List<Integer>> move : moves.entrySet()) {
+                int[] kernel = move.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+                transitions.get(s).put(move.getKey(), addState(kernel));
+            }
+        }
+    }
+
+    private int addState(int[] kernel) {
+        String key = Arrays.toString(kernel);
+        Integer id = stateIds.get(key);
+        if (id == null) {
+            id = states.size();
+            states.add(kernel);
+            stateIds.put(key, id);
+            transitions.add(new HashMap<>());
+        }
+        return id;
+    }
+
+    private List<Integer> closure(int[] kernel) {
+        List<Integer> items = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int item : kernel) {
+            items.add(item);
+            seen.add(item);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            int item = items.get(i);
+            int[] symbols = rhs.get(item >> 8);
+            int dot = item & 0xFF;
+            if (dot < symbols.length && symbols[dot] >= ParseTables.TERMINAL_COUNT) {
+                int nonterminal = symbols[dot] - ParseTables.TERMINAL_COUNT;
+                for (int r = 0; r < lhs.size(); r++) {
+                    if (lhs.get(r) == nonterminal && seen.add(r << 8)) {
+                        items.add(r << 8);
+                    }
+                }
+            }
+        }
+        return items;
+    }
+
+    private void computeSets(boolean[] nullable, BitSet[] first, BitSet[] follow) {
+        for (int n = 0; n < nonterminals.size(); n++) {
+            first[n] = new BitSet();
+            follow[n] = new BitSet();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < lhs.size(); r++) {
+                int left = lhs.get(r);
+                BitSet before = (BitSet) first[left].clone();
+                boolean allNullable = true;
+                for (int symbol : rhs.get(r)) {
+                    if (symbol < ParseTables.TERMINAL_COUNT) {
+                        first[left].set(symbol);
+                        allNullable = false;
+                        break;
+                    }
+                    first[left].or(first[symbol - ParseTables.TERMINAL_COUNT]);
+                    if (!nullable[symbol - ParseTables.TERMINAL_COUNT]) {
+                        allNullable = false;
+                        break;
+                    }
+                }
+                if (allNullable && !nullable[left]) {
+                    nullable[left] = true;
+                    changed = true;
+                }
+                changed |= !first[left].equals(before);
+            }
+        }
+
+        changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < lhs.size(); r++) {
+                int[] symbols = rhs.get(r);
+                // Walk right to left, tracking what can follow the current position
+                BitSet trailer = (BitSet) follow[lhs.get(r)].clone();
+                for (int i = symbols.length - 1; i >= 0; i--) {
+                    int symbol = symbols[i];
+                    if (symbol < ParseTables.TERMINAL_COUNT) {
+                        trailer = new BitSet();
+                        trailer.set(symbol);
+                        continue;
+                    }
+                    int nonterminal = symbol - ParseTables.TERMINAL_COUNT;
+                    BitSet before = (BitSet) follow[nonterminal].clone();
+                    follow[nonterminal].or(trailer);
+                    changed |= !follow[nonterminal].equals(before);
+                    if (nullable[nonterminal]) {
+                        trailer.or(first[nonterminal]);
+                    } else {
+                        trailer = (BitSet) first[nonterminal].clone();
+                    }
+                }
+            }
+        }
+    }
+
+    private String terminalName(int terminal) {
+        switch (terminal - ParseTables.V) {
+            case 0:
+                return "V";
+            case 1:
+                return "F";
+            case 2:
+                return "N";
+            case 3:
+                return "T";
+        }
+        for (Map.Entry<String, Integer> entry : terminalIds.entrySet()) {
+            if (entry.getValue() == terminal) {
+                return entry.getKey();
+            }
+        }
+        return String.valueOf(terminal);
+    }
+}
@@ -1,92 +1,196 @@
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
 import java.util.*;
 import javax.xml.parsers.*;
 import org.w3c.dom.*;
 
-public class ScopeAnalyzer {
+public class ScopeAnalyzer implements Phase<SyntaxTree, Symbols> {
+    private static final String ERROR_MESSAGE = "ScopeAnalyzer encountered an error and stopped execution.";
+
+    @Override
+    public String name() {
+        return "Scope Analyzer";
+    }
+
+    @Override
+    public Symbols run(SyntaxTree tree) throws Exception {
+        Symbols symbols = analyze(tree, null);
+        if (symbols == null) {
+            throw new Exception(ERROR_MESSAGE);
+        }
+        return symbols;
+    }
+
+    // Usage: java ScopeAnalyzer [--workspace <directory>] [token-file]. Without a token file the tree is read
+    // from parser.xml, with one (lexer.xml or a .tok file) the tokens are parsed in memory and no XML tree is
+    // written or read. parser.xml and Symbol.txt are in the workspace, by default the current directory.
     public static void main(String[] args) {
+        List<String> files = new ArrayList<>(Arrays.asList(args));
+        ArtifactStore workspace = ArtifactStore.workspace(files);
         try {
-            // Parse the XML file
-            //System.out.println("Parsing XML syntax tree...");
-            File inputFile = new File("parser.xml");
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(inputFile);
-            doc.getDocumentElement().normalize();
-
-            // Run ScopeAnalyzer1
-            //System.out.println("\n=== Running ScopeAnalyzer1 ===");
-            ScopeAnalyzer1 analyzer1 = new ScopeAnalyzer1();
-            ScopeAnalyzer1.Node root1 = analyzer1.parseXML(doc.getDocumentElement());
-            //System.out.println("Parsing completed for ScopeAnalyzer1.");
-            //System.out.println("Root node parsed: " + root1.getVarName());
-            //System.out.println("Analyzing scope with ScopeAnalyzer1...");
-            if (analyzer1.analyzeNode(root1)) {
-                analyzer1.printGlobalSymbolTable();
-                // Run ScopeAnalyzer2
-                System.out.println("\n=== Running ScopeAnalyzer ===");
-                ScopeAnalyzer2 analyzer2 = new ScopeAnalyzer2();
-                ScopeAnalyzer2.NodeType root2 = analyzer2.parseXML(doc.getDocumentElement());
-                // System.out.println("Parsing completed for ScopeAnalyzer2.");
-                // System.out.println("Root node parsed: " + root2.getVarName());
-                // System.out.println("Analyzing scope with ScopeAnalyzer2...");
-                if (analyzer2.analyzeNode(root2)) {
-                    analyzer2.printGlobalSymbolTable();
-                    analyzer2.writeSymbolTableToFile("Symbol.txt");
-                    System.out.println("Symbol table has been written to Symbol.txt");
-                } else {
-                    System.err.println("ScopeAnalyzer encountered an error and stopped execution.");
+            Document doc = null;
+            SyntaxTree tree = null;
+            if (files.size() > 0) {
+                tree = new SLRParser().parseFile(files.get(0));
+            } else {
+                // Parse the XML file
+                //System.out.println("Parsing XML syntax tree...");
+                DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+                DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+                try (InputStream in = workspace.open("parser.xml")) {
+                    doc = dBuilder.parse(in);
                 }
+                doc.getDocumentElement().normalize();
+            }
 
+            Symbols symbols = analyze(tree, doc);
+            if (symbols != null) {
+                try (OutputStream out = workspace.create("Symbol.txt")) {
+                    symbols.write(out);
+                } catch (IOException e) {
+                    System.err.println("Error writing to file: " + e.getMessage());
+                }
+                System.out.println("Symbol table has been written to Symbol.txt");
             } else {
-                System.err.println("ScopeAnalyzer encountered an error and stopped execution.");
+                System.err.println(ERROR_MESSAGE);
             }
 
-            
-
-            
-
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    // Runs both passes on tree, or on the parser.xml document when tree is null. Returns the global symbol
+    // table, or null if a scope error stopped the analysis.
+    static Symbols analyze(SyntaxTree tree, Document doc) {
+        // A tree's names were interned by the lexer, a document's are interned as it is read
+        LexemeTable lexemes = tree != null ? tree.getTokens().lexemes() : new LexemeTable();
+        // Run ScopeAnalyzer1
+        //System.out.println("\n=== Running ScopeAnalyzer1 ===");
+        ScopeAnalyzer1 analyzer1 = new ScopeAnalyzer1(lexemes);
+        ScopeAnalyzer1.Node root1 = tree != null ? analyzer1.fromTree(tree, tree.root())
+                : analyzer1.parseXML(doc.getDocumentElement());
+        //System.out.println("Parsing completed for ScopeAnalyzer1.");
+        //System.out.println("Root node parsed: " + root1.getVarName());
+        //System.out.println("Analyzing scope with ScopeAnalyzer1...");
+        if (!analyzer1.analyzeNode(root1)) {
+            return null;
+        }
+        analyzer1.printGlobalSymbolTable();
+        // Run ScopeAnalyzer2
+        System.out.println("\n=== Running ScopeAnalyzer ===");
+        ScopeAnalyzer2 analyzer2 = new ScopeAnalyzer2(lexemes);
+        ScopeAnalyzer2.NodeType root2 = tree != null ? analyzer2.fromTree(tree, tree.root())
+                : analyzer2.parseXML(doc.getDocumentElement());
+        // System.out.println("Parsing completed for ScopeAnalyzer2.");
+        // System.out.println("Root node parsed: " + root2.getVarName());
+        // System.out.println("Analyzing scope with ScopeAnalyzer2...");
+        if (!analyzer2.analyzeNode(root2)) {
+            return null;
+        }
+        analyzer2.printGlobalSymbolTable();
+        return analyzer2.symbols();
+    }
+
+    // The open scopes, keyed by lexeme ID. depths[id] is the depth of the innermost open scope that declares
+    // id, 0 if none does. A scope that closes puts back the depths its declarations shadowed.
+    static class Scopes {
+        private int[] depths;
+        private final IntStack declared = new IntStack(); // IDs declared in the open scopes, innermost last
+        private final IntStack shadowed = new IntStack(); // The depth each of them shadowed
+        private final List<String> types = new ArrayList<>(); // The type each was declared with
+        private final IntStack starts = new IntStack(); // Where each open scope's declarations start
+
+        Scopes(int lexemeCount) {
+            depths = new int[Math.max(lexemeCount, 1)];
+            starts.push(0); // The global scope, which never closes
+        }
+
+        void enter() {
+            starts.push(declared.size());
+        }
+
+        // Closes the innermost scope, never the global one
+        void exit() {
+            if (starts.size() == 1) {
+                return;
+            }
+            int start = starts.pop();
+            for (int i = declared.size() - 1; i >= start; i--) {
+                depths[declared.get(i)] = shadowed.get(i);
+            }
+            declared.pop(declared.size() - start);
+            shadowed.pop(shadowed.size() - start);
+            types.subList(start, types.size()).clear();
+        }
+
+        void declare(int id, String type) {
+            if (id >= depths.length) {
+                depths = Arrays.copyOf(depths, Math.max(id + 1, depths.length * 2));
+            }
+            declared.push(id);
+            shadowed.push(depths[id]);
+            types.add(type);
+            depths[id] = starts.size();
+        }
+
+        boolean inCurrentScope(int id) {
+            return id < depths.length && depths[id] == starts.size();
+        }
+
+        boolean inAnyScope(int id) {
+            return id < depths.length && depths[id] > 0;
+        }
+
+        // The positions of the global declarations, in the order a HashMap keyed by their names iterates
+        // them. Symbol.txt has always listed the globals in that order, and TargetCode numbers the BASIC
+        // variables by it.
+        Collection<Integer> globals(LexemeTable lexemes) {
+            int end = starts.size() > 1 ? starts.get(1) : declared.size();
+            Map<String, Integer> globals = new HashMap<>();
+            for (int i = 0; i < end; i++) {
+                globals.put(lexemes.get(declared.get(i)), i);
+            }
+            return globals.values();
+        }
+
+        int id(int declaration) {
+            return declared.get(declaration);
+        }
+
+        String type(int declaration) {
+            return types.get(declaration);
+        }
+    }
+
     // ScopeAnalyzer1 implementation
     static class ScopeAnalyzer1 {
-        private Stack<SymbolTable> scopeStack;
+        private final Scopes scopes;
         private int varCounter;
         private int funcCounter;
-        private Map<String, String> uniqueNames;
+        private String[] uniqueNames;
         private boolean stopOnError;
         private String currentType = "";
         private boolean inFunctionParams = false;
+        // Names are looked up by the lexeme IDs the lexer gave them
+        private final LexemeTable lexemes;
 
-        public ScopeAnalyzer1() {
-            scopeStack = new Stack<>();
-            scopeStack.push(new SymbolTable());
+        public ScopeAnalyzer1(LexemeTable lexemes) {
+            this.lexemes = lexemes;
+            scopes = new Scopes(lexemes.size());
             varCounter = 100;
             funcCounter = 500;
-            uniqueNames = new HashMap<>();
+            uniqueNames = new String[lexemes.size()];
             stopOnError = false;
         }
 
         public void enterScope() {
             //System.out.println("Entering a new scope.");
-            scopeStack.push(new SymbolTable());
-            printCurrentSymbolTable();
+            scopes.enter();
         }
 
         public void exitScope() {
-            if (!scopeStack.isEmpty() && scopeStack.size() > 1) {
-                printCurrentSymbolTable();
-                //System.out.println("Exiting the current scope.");
-                scopeStack.pop();
-                printCurrentSymbolTable();
-            } else {
-                //System.err.println("Error: Attempted to exit scope, but no non-global scope exists.");
-            }
+            //System.out.println("Exiting the current scope.");
+            scopes.exit();
         }
 
         private String generateUniqueVarName() {
@@ -97,42 +201,46 @@ public class ScopeAnalyzer {
             return "f" + (funcCounter++);
         }
 
-        public boolean declare(String varName, String type) {
-            SymbolTable currentScope = scopeStack.peek();
+        private void setUniqueName(int symbol, String uniqueName) {
+            if (symbol >= uniqueNames.length) {
+                uniqueNames = Arrays.copyOf(uniqueNames, Math.max(symbol + 1, uniqueNames.length * 2));
+            }
+            uniqueNames[symbol] = uniqueName;
+        }
 
-            if (currentScope.contains(varName)) {
+        private int symbolOf(String name) {
+            return name.isEmpty() ? -1 : lexemes.intern(name);
+        }
+
+        private String getUniqueName(int symbol) {
+            return symbol >= 0 && symbol < uniqueNames.length ? uniqueNames[symbol] : null;
+        }
+
+        public boolean declare(int symbol, String type) {
+            String varName = lexemes.get(symbol);
+            if (scopes.inCurrentScope(symbol)) {
                 System.err.println("Error: Variable or function '" + varName + " is not declared in the scope or has a duplicate declaration. ");
                 stopOnError = true;
                 return false;
             }
 
-            if (containsInAnyScope(varName)) {
+            if (scopes.inAnyScope(symbol)) {
                 return true;
             }
 
             String uniqueName = isFunction(varName) ? generateUniqueFuncName() : generateUniqueVarName();
-            uniqueNames.put(varName, uniqueName);
+            setUniqueName(symbol, uniqueName);
 
-            currentScope.add(varName, type);
+            scopes.declare(symbol, type);
             return true;
         }
 
-        public boolean containsInAnyScope(String varName) {
-            for (SymbolTable scope : scopeStack) {
-                if (scope.contains(varName)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public boolean checkUsage(String varName) {
-            for (SymbolTable scope : scopeStack) {
-                if (scope.contains(varName)) {
-                    String uniqueName = uniqueNames.get(varName);
-                    System.out.println("Using " + (isFunction(varName) ? "function" : "variable") + ": " + varName + " as " + uniqueName);
-                    return true;
-                }
+        public boolean checkUsage(int symbol) {
+            String varName = lexemes.get(symbol);
+            if (scopes.inAnyScope(symbol)) {
+                String uniqueName = getUniqueName(symbol);
+                System.out.println("Using " + (isFunction(varName) ? "function" : "variable") + ": " + varName + " as " + uniqueName);
+                return true;
             }
             System.err.println("Error: Variable or function '" + varName + " is not declared in the scope or has a duplicate declaration. ");
             stopOnError = true;
@@ -145,28 +253,28 @@ public class ScopeAnalyzer {
             }
 
             if (node.getType().equals("TERMINAL")) {
-                if (node.getVarName().equals("num") || node.getVarName().equals("text")
-                        || node.getVarName().equals("void")) {
+                if (node.getSymbol() == LexemeTable.NUM || node.getSymbol() == LexemeTable.TEXT
+                        || node.getSymbol() == LexemeTable.VOID) {
                     currentType = node.getVarName();
                     inFunctionParams = false;
                 } else if (isFunction(node.getVarName())) {
                     inFunctionParams = true;
-                    if (!declare(node.getVarName(), currentType)) {
+                    if (!declare(node.getSymbol(), currentType)) {
                         return false;
                     }
                 } else if (isVariableOrFunction(node.getVarName())) {
                     String typeToUse = inFunctionParams ? "num" : currentType;
                     if (node.isAssignment()) {
-                        if (!checkUsage(node.getVarName())) {
+                        if (!checkUsage(node.getSymbol())) {
                             return false;
                         }
                         System.out.println("Assigning value to " + node.getVarName());
-                    } else if (scopeStack.peek().contains(node.getVarName())) {
+                    } else if (scopes.inCurrentScope(node.getSymbol())) {
                         System.err.println("Error: Variable/Function '" + node.getVarName()
                                 + "' is already declared in this scope.");
                         return false;
                     } else {
-                        if (!declare(node.getVarName(), typeToUse)) {
+                        if (!declare(node.getSymbol(), typeToUse)) {
                             return false;
                         }
                     }
@@ -197,16 +305,11 @@ public class ScopeAnalyzer {
         }
 
         public void printGlobalSymbolTable() {
-            if (!scopeStack.isEmpty()) {
-                SymbolTable globalScope = scopeStack.firstElement();
-                //System.out.println("\n=== Final Global Symbol Table (ScopeAnalyzer1) ===");
-                for (Map.Entry<String, String> entry : globalScope.getVariables().entrySet()) {
-                    String varName = entry.getKey();
-                    String type = entry.getValue();
-                    //System.out.println(varName + " : " + uniqueNames.get(varName) + " : " + type);
-                }
-            } else {
-                System.err.println("Error: No scope to print the global symbol table.");
+            //System.out.println("\n=== Final Global Symbol Table (ScopeAnalyzer1) ===");
+            for (int declaration : scopes.globals(lexemes)) {
+                String varName = lexemes.get(scopes.id(declaration));
+                String type = scopes.type(declaration);
+                //System.out.println(varName + " : " + uniqueNames.get(varName) + " : " + type);
             }
         }
 
@@ -226,51 +329,33 @@ public class ScopeAnalyzer {
                 }
             }
 
-            return new Node(nodeName, varName, children);
+            return new Node(nodeName, varName, symbolOf(varName), children);
         }
 
-        private void printCurrentSymbolTable() {
-            if (!scopeStack.isEmpty()) {
-                SymbolTable currentScope = scopeStack.peek();
-                //System.out.println("=== Symbol Table for current scope ===");
-                currentScope.printTable();
-            } else {
-                System.err.println("Error: Attempted to print symbol table for an empty scope.");
-            }
-        }
-
-        static class SymbolTable {
-            private Map<String, String> variables;
-
-            public SymbolTable() {
-                variables = new HashMap<>();
-            }
-
-            public void add(String varName, String type) {
-                variables.put(varName, type);
+        // Same shape as parseXML gives for parser.xml: leaves are TERMINAL nodes named after their token
+        // and are met in token order, inner nodes carry no name
+        public Node fromTree(SyntaxTree tree, int node) {
+            if (tree.isLeaf(node)) {
+                int symbol = tree.lexemeId(node);
+                return new Node("TERMINAL", lexemes.get(symbol), symbol, new ArrayList<>());
             }
-
-            public boolean contains(String varName) {
-                return variables.containsKey(varName);
-            }
-
-            public Map<String, String> getVariables() {
-                return variables;
-            }
-
-            public void printTable() {
-                // System.out.println("Variables: " + variables);
+            List<Node> children = new ArrayList<>();
+            for (int child = tree.firstChild(node); child != SyntaxTree.NONE; child = tree.nextSibling(child)) {
+                children.add(fromTree(tree, child));
             }
+            return new Node("IN", "", -1, children);
         }
 
         static class Node {
             private String nodeType;
             private String varName;
+            private int symbol;
             private List<Node> children;
 
-            public Node(String nodeType, String varName, List<Node> children) {
+            public Node(String nodeType, String varName, int symbol, List<Node> children) {
                 this.nodeType = nodeType;
                 this.varName = varName;
+                this.symbol = symbol;
                 this.children = children;
             }
 
@@ -282,67 +367,66 @@ public class ScopeAnalyzer {
                 return varName;
             }
 
+            public int getSymbol() {
+                return symbol;
+            }
+
             public List<Node> getChildren() {
                 return children;
             }
 
             public boolean isAssignment() {
-                return nodeType.equals("ASSIGN") || varName.equals("=");
+                return nodeType.equals("ASSIGN") || symbol == LexemeTable.ASSIGN;
             }
 
             public boolean isBlockStart() {
-                return varName.equals("begin");
+                return symbol == LexemeTable.BEGIN;
             }
 
             public boolean isBlockEnd() {
-                return varName.equals("end");
+                return symbol == LexemeTable.END;
             }
         }
     }
 
     // ScopeAnalyzer2 implementation
     static class ScopeAnalyzer2 {
-        private Stack<SymbolTable> scopeStack;
+        private final Scopes scopes;
         private int varCounter;
         private int funcCounter;
-        private Map<String, String> uniqueNames;
+        private String[] uniqueNames;
         private boolean stopOnError;
-        private Set<String> declaredFunctions;
-        private Set<String> usedFunctions;
-        private Map<String, Set<String>> functionScopes;
+        private BitSet declaredFunctions;
+        private BitSet usedFunctions;
+        private Map<Integer, BitSet> functionScopes;
         private String currentType = "";
         private boolean inFunctionParams = false;
+        // Names are looked up by the lexeme IDs the lexer gave them
+        private final LexemeTable lexemes;
 
-        public ScopeAnalyzer2() {
-            scopeStack = new Stack<>();
-            scopeStack.push(new SymbolTable());
+        public ScopeAnalyzer2(LexemeTable lexemes) {
+            this.lexemes = lexemes;
+            scopes = new Scopes(lexemes.size());
             varCounter = 100;
             funcCounter = 500;
-            uniqueNames = new HashMap<>();
+            uniqueNames = new String[lexemes.size()];
             stopOnError = false;
-            declaredFunctions = new HashSet<>();
-            usedFunctions = new HashSet<>();
+            declaredFunctions = new BitSet();
+            usedFunctions = new BitSet();
             functionScopes = new HashMap<>();
         }
 
-        public void enterScope(String scopeName) {
+        public void enterScope(int scopeName) {
             //System.out.println("Entering scope: " + scopeName);
-            scopeStack.push(new SymbolTable());
-            if (scopeName.startsWith("F_")) {
-                functionScopes.put(scopeName, new HashSet<>());
+            scopes.enter();
+            if (scopeName >= 0 && isFunction(lexemes.get(scopeName))) {
+                functionScopes.put(scopeName, new BitSet());
             }
-            printCurrentSymbolTable();
         }
 
         public void exitScope() {
-            if (!scopeStack.isEmpty() && scopeStack.size() > 1) {
-                printCurrentSymbolTable();
-                //System.out.println("Exiting the current scope.");
-                scopeStack.pop();
-                printCurrentSymbolTable();
-            } else {
-                //System.err.println("Finished all scopes.");
-            }
+            //System.out.println("Exiting the current scope.");
+            scopes.exit();
         }
 
         private String generateUniqueVarName() {
@@ -353,51 +437,52 @@ public class ScopeAnalyzer {
             return "f" + (funcCounter++);
         }
 
-        public boolean declare(String varName, String currentFunction, String type) {
-            SymbolTable currentScope = scopeStack.peek();
+        private void setUniqueName(int symbol, String uniqueName) {
+            if (symbol >= uniqueNames.length) {
+                uniqueNames = Arrays.copyOf(uniqueNames, Math.max(symbol + 1, uniqueNames.length * 2));
+            }
+            uniqueNames[symbol] = uniqueName;
+        }
+
+        private int symbolOf(String name) {
+            return name.isEmpty() ? -1 : lexemes.intern(name);
+        }
 
-            if (currentScope.contains(varName)) {
+        private String getUniqueName(int symbol) {
+            return symbol >= 0 && symbol < uniqueNames.length ? uniqueNames[symbol] : null;
+        }
+
+        // currentFunction is the lexeme ID of the enclosing function, or -1 outside of one
+        public boolean declare(int symbol, int currentFunction, String type) {
+            String varName = lexemes.get(symbol);
+            if (scopes.inCurrentScope(symbol)) {
                 System.err.println("Error: Variable '" + varName + "' is already declared in this scope.");
                 stopOnError = true;
                 return false;
             }
 
             String uniqueName = isFunction(varName) ? generateUniqueFuncName() : generateUniqueVarName();
-            uniqueNames.put(varName, uniqueName);
+            setUniqueName(symbol, uniqueName);
 
-            currentScope.add(varName, type);
-            if (currentFunction != null && functionScopes.containsKey(currentFunction)) {
-                functionScopes.get(currentFunction).add(varName);
+            scopes.declare(symbol, type);
+            if (currentFunction >= 0 && functionScopes.containsKey(currentFunction)) {
+                functionScopes.get(currentFunction).set(symbol);
             }
             if (isFunction(varName)) {
-                declaredFunctions.add(varName);
+                declaredFunctions.set(symbol);
             }
             return true;
         }
 
-        public boolean containsInCurrentScope(String varName) {
-            return scopeStack.peek().contains(varName);
-        }
-
-        public boolean containsInAnyScope(String varName) {
-            for (SymbolTable scope : scopeStack) {
-                if (scope.contains(varName)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public boolean checkUsage(String varName, String currentFunction) {
-            for (SymbolTable scope : scopeStack) {
-                if (scope.contains(varName)) {
-                    String uniqueName = uniqueNames.get(varName);
-                    //System.out.println("Using " + (isFunction(varName) ? "function" : "variable") + ": " + varName + " as " + uniqueName);
-                    if (isFunction(varName)) {
-                        usedFunctions.add(varName);
-                    }
-                    return true;
+        public boolean checkUsage(int symbol, int currentFunction) {
+            String varName = lexemes.get(symbol);
+            if (scopes.inAnyScope(symbol)) {
+                String uniqueName = getUniqueName(symbol);
+                //System.out.println("Using " + (isFunction(varName) ? "function" : "variable") + ": " + varName + " as " + uniqueName);
+                if (isFunction(varName)) {
+                    usedFunctions.set(symbol);
                 }
+                return true;
             }
             System.err.println("Error: Variable or function '" + varName + "' is not declared in the current scope.");
             stopOnError = true;
@@ -405,32 +490,32 @@ public class ScopeAnalyzer {
         }
 
         public boolean analyzeNode(NodeType node) {
-            if (!analyzeNodeFirstPass(node, null)) {
+            if (!analyzeNodeFirstPass(node, -1)) {
                 return false; // Stop if error in first pass
             }
-            return analyzeNodeSecondPass(node, null);
+            return analyzeNodeSecondPass(node, -1);
         }
 
-        private boolean analyzeNodeFirstPass(NodeType node, String currentFunction) {
+        private boolean analyzeNodeFirstPass(NodeType node, int currentFunction) {
             if (node.isBlockStart()) {
-                enterScope(node.getVarName());
+                enterScope(node.getSymbol());
             }
 
             if (node.getType().equals("TERMINAL")) {
-                if (node.getVarName().equals("num") || node.getVarName().equals("text")
-                        || node.getVarName().equals("void")) {
+                if (node.getSymbol() == LexemeTable.NUM || node.getSymbol() == LexemeTable.TEXT
+                        || node.getSymbol() == LexemeTable.VOID) {
                     currentType = node.getVarName();
                     inFunctionParams = false;
                 } else if (isFunction(node.getVarName())) {
                     inFunctionParams = true;
-                    currentFunction = node.getVarName();
-                    if (!declare(currentFunction, null, currentType)) {
+                    currentFunction = node.getSymbol();
+                    if (!declare(currentFunction, -1, currentType)) {
                         return false;
                     }
                 } else if (isVariableOrFunction(node.getVarName())) {
                     String typeToUse = inFunctionParams ? "num" : currentType;
-                    if (!node.isAssignment() && !containsInCurrentScope(node.getVarName())) {
-                        if (!declare(node.getVarName(), currentFunction, typeToUse)) {
+                    if (!node.isAssignment() && !scopes.inCurrentScope(node.getSymbol())) {
+                        if (!declare(node.getSymbol(), currentFunction, typeToUse)) {
                             return false;
                         }
                     }
@@ -439,9 +524,9 @@ public class ScopeAnalyzer {
                 inFunctionParams = false;
             }
 
-            if (node.getType().equals("FNAME")) {
-                currentFunction = node.getVarName();
-                if (!declare(currentFunction, null, currentType)) {
+            if (node.getType().equals("FNAME") && node.getSymbol() >= 0) {
+                currentFunction = node.getSymbol();
+                if (!declare(currentFunction, -1, currentType)) {
                     return false;
                 }
             }
@@ -459,30 +544,25 @@ public class ScopeAnalyzer {
             return true;
         }
         
-        public void writeSymbolTableToFile(String fileName) {
-            try (FileWriter writer = new FileWriter(fileName)) {
-                SymbolTable globalScope = scopeStack.firstElement();
-                //writer.write("=== Global Symbol Table ===\n");
-                for (Map.Entry<String, String> entry : globalScope.getVariables().entrySet()) {
-                    String varName = entry.getKey();
-                    String type = entry.getValue();
-                    String uniqueName = uniqueNames.get(varName);
-                    writer.write(varName + " : " + uniqueName + " : " + type + "\n");
-                }
-            } catch (IOException e) {
-                System.err.println("Error writing to file: " + e.getMessage());
+        // The global scope in the order Symbol.txt has always listed it
+        public Symbols symbols() {
+            Symbols symbols = new Symbols();
+            for (int declaration : scopes.globals(lexemes)) {
+                int symbol = scopes.id(declaration);
+                symbols.add(lexemes.get(symbol), getUniqueName(symbol), scopes.type(declaration));
             }
+            return symbols;
         }
         
-        private boolean analyzeNodeSecondPass(NodeType node, String currentFunction) {
+        private boolean analyzeNodeSecondPass(NodeType node, int currentFunction) {
             if (node.isBlockStart()) {
-                enterScope(node.getVarName());
+                enterScope(node.getSymbol());
             }
 
             if (node.getType().equals("TERMINAL") && !node.getVarName().isEmpty()) {
                 if (isVariableOrFunction(node.getVarName())) {
-                    if (node.isAssignment() || !containsInCurrentScope(node.getVarName())) {
-                        if (!checkUsage(node.getVarName(), currentFunction)) {
+                    if (node.isAssignment() || !scopes.inCurrentScope(node.getSymbol())) {
+                        if (!checkUsage(node.getSymbol(), currentFunction)) {
                             return false; // Stop execution on error
                         }
                     }
@@ -490,7 +570,7 @@ public class ScopeAnalyzer {
             }
 
             if (node.getType().equals("FNAME")) {
-                currentFunction = node.getVarName();
+                currentFunction = node.getSymbol();
             }
 
             for (NodeType child : node.getChildren()) {
@@ -515,16 +595,10 @@ public class ScopeAnalyzer {
         }
 
         public void printGlobalSymbolTable() {
-            if (!scopeStack.isEmpty()) {
-                SymbolTable globalScope = scopeStack.firstElement();
-                System.out.println("\n=== Final Global Symbol Table ===");
-                for (Map.Entry<String, String> entry : globalScope.getVariables().entrySet()) {
-                    String varName = entry.getKey();
-                    String type = entry.getValue();
-                    System.out.println(varName + " : " + uniqueNames.get(varName) + " : " + type);
-                }
-            } else {
-                System.err.println("Error: No scope to print the global symbol table.");
+            System.out.println("\n=== Final Global Symbol Table ===");
+            for (int declaration : scopes.globals(lexemes)) {
+                int symbol = scopes.id(declaration);
+                System.out.println(lexemes.get(symbol) + " : " + getUniqueName(symbol) + " : " + scopes.type(declaration));
             }
         }
 
@@ -545,26 +619,28 @@ public class ScopeAnalyzer {
                 }
             }
 
-            return new NodeType(nodeName, varName, children);
+            return new NodeType(nodeName, varName, symbolOf(varName), children);
         }
 
-        private void printCurrentSymbolTable() {
-            if (!scopeStack.isEmpty()) {
-                SymbolTable currentScope = scopeStack.peek();
-                //System.out.println("=== Symbol Table for current scope ===");
-                currentScope.printTable();
-            } else {
-                System.err.println("Error: Attempted to print symbol table for an empty scope.");
+        public NodeType fromTree(SyntaxTree tree, int node) {
+            if (tree.isLeaf(node)) {
+                int symbol = tree.lexemeId(node);
+                return new NodeType("TERMINAL", lexemes.get(symbol), symbol, new ArrayList<>());
             }
+            List<NodeType> children = new ArrayList<>();
+            for (int child = tree.firstChild(node); child != SyntaxTree.NONE; child = tree.nextSibling(child)) {
+                children.add(fromTree(tree, child));
+            }
+            return new NodeType("IN", "", -1, children);
         }
 
         public void checkFunctionUsage() {
-            Set<String> undeclaredFunctions = new HashSet<>(usedFunctions);
-            undeclaredFunctions.removeAll(declaredFunctions);
+            BitSet undeclaredFunctions = (BitSet) usedFunctions.clone();
+            undeclaredFunctions.andNot(declaredFunctions);
 
             if (!undeclaredFunctions.isEmpty()) {
-                for (String func : undeclaredFunctions) {
-                    System.err.println("Error: Function '" + func + "' is used but not declared.");
+                for (int func = undeclaredFunctions.nextSetBit(0); func >= 0; func = undeclaredFunctions.nextSetBit(func + 1)) {
+                    System.err.println("Error: Function '" + lexemes.get(func) + "' is used but not declared.");
                 }
                 stopOnError = true;
             }
@@ -574,38 +650,16 @@ public class ScopeAnalyzer {
             return stopOnError;
         }
 
-        static class SymbolTable {
-            private Map<String, String> variables;
-
-            public SymbolTable() {
-                variables = new HashMap<>();
-            }
-
-            public void add(String varName, String type) {
-                variables.put(varName, type);
-            }
-
-            public boolean contains(String varName) {
-                return variables.containsKey(varName);
-            }
-
-            public Map<String, String> getVariables() {
-                return variables;
-            }
-
-            public void printTable() {
-                // System.out.println("Variables: " + variables);
-            }
-        }
-
         static class NodeType {
             private String nodeType;
             private String varName;
+            private int symbol;
             private List<NodeType> children;
 
-            public NodeType(String nodeType, String varName, List<NodeType> children) {
+            public NodeType(String nodeType, String varName, int symbol, List<NodeType> children) {
                 this.nodeType = nodeType;
                 this.varName = varName;
+                this.symbol = symbol;
                 this.children = children;
             }
 
@@ -617,20 +671,24 @@ public class ScopeAnalyzer {
                 return varName;
             }
 
+            public int getSymbol() {
+                return symbol;
+            }
+
             public List<NodeType> getChildren() {
                 return children;
             }
 
             public boolean isAssignment() {
-                return nodeType.equals("ASSIGN") || varName.equals("=");
+                return nodeType.equals("ASSIGN") || symbol == LexemeTable.ASSIGN;
             }
 
             public boolean isBlockStart() {
-                return varName.equals("begin");
+                return symbol == LexemeTable.BEGIN;
             }
 
             public boolean isBlockEnd() {
-                return varName.equals("end");
+                return symbol == LexemeTable.END;
             }
         }
     }
@@ -0,0 +1,57 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// The symbol table ScopeAnalyzer hands to the later phases: each symbol's name in the program, the unique
+// name it was given and its type, in the order Symbol.txt lists them. TargetCode numbers the BASIC
+// variables in this order, so it is kept as is.
+public class Symbols {
+    private final List<String> names = new ArrayList<>();
+    private final List<String> uniqueNames = new ArrayList<>();
+    private final List<String> types = new ArrayList<>();
+
+    public void add(String name, String uniqueName, String type) {
+        names.add(name);
+        uniqueNames.add(uniqueName);
+        types.add(type);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String name(int index) {
+        return names.get(index);
+    }
+
+    public String uniqueName(int index) {
+        return uniqueNames.get(index);
+    }
+
+    public String type(int index) {
+        return types.get(index);
+    }
+
+    // Symbol.txt has one "name : unique-name : type" line per symbol
+    public void write(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (int i = 0; i < size(); i++) {
+            writer.write(names.get(i) + " : " + uniqueNames.get(i) + " : " + types.get(i) + "\n");
+        }
+        writer.flush();
+    }
+
+    public static Symbols read(InputStream in) throws IOException {
+        Symbols symbols = new Symbols();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.split(" : ");
+            if (parts.length != 3) {
+                throw new IOException("Invalid symbol table line: " + line);
+            }
+            symbols.add(parts[0], parts[1], parts[2]);
+        }
+        return symbols;
+    }
+}
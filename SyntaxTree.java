@@ -0,0 +1,421 @@
+import java.io.*;
+import java.util.Arrays;
+
+// Concrete syntax tree in parallel int arrays, as SLRParser builds it. Nodes are numbered in the order
+// the parser created them: a leaf per shifted token, an inner node per reduce. Symbols use the parser's
+// numbering, terminal IDs for leaves and ParseTables.TERMINAL_COUNT + non-terminal for inner nodes.
+// Every node also keeps the parser state it was started from, which SLRParser.reparse matches on.
+// SLRParser.reparse replaces subtrees in place and appends their replacements, after which the nodes
+// are only back in that order once compact runs.
+public class SyntaxTree {
+    public static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] symbols;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] tokenIndexes; // NONE for inner nodes and the end marker
+    private int[] states;
+    private int[] lastTokens;   // Last token of the subtree, NONE if it has none
+    private int size = 0;
+    private int root = NONE;
+    private int endMarker = NONE; // The leaf of the end marker once it was shifted
+    private int errorCount = 0;
+
+    // Kept up to date by reparse once it built them
+    private int[] leaves;                         // Token index to its leaf
+    private boolean inParseOrder = true;
+    private int orderedSize;                      // Nodes when the tree was last in parse order
+    private int replacementStart = NONE;          // First node of the replacement being built
+    private final IntStack adopted = new IntStack(); // Older nodes it adopted, with their parent and next sibling
+
+    private TokenBuffer tokens;
+    private final String[] nonterminals;
+
+    public SyntaxTree(TokenBuffer tokens, String[] nonterminals) {
+        this(tokens, nonterminals, INITIAL_CAPACITY);
+    }
+
+    public SyntaxTree(TokenBuffer tokens, String[] nonterminals, int capacity) {
+        this.tokens = tokens;
+        this.nonterminals = nonterminals;
+        capacity = Math.max(capacity, 1);
+        symbols = new int[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        tokenIndexes = new int[capacity];
+        states = new int[capacity];
+        lastTokens = new int[capacity];
+    }
+
+    public int addLeaf(int terminal, int tokenIndex, int state) {
+        int node = newNode(terminal, state);
+        tokenIndexes[node] = tokenIndex;
+        lastTokens[node] = tokenIndex;
+        if (tokenIndex == NONE) {
+            endMarker = node;
+        }
+        return node;
+    }
+
+    // Adds the node for a reduce, its children are the top count nodes of the parser's node stack
+    public int addNode(int nonterminal, IntStack stack, int count, int state) {
+        int node = newNode(ParseTables.TERMINAL_COUNT + nonterminal, state);
+        int previous = NONE;
+        for (int i = stack.size() - count; i < stack.size(); i++) {
+            int child = stack.get(i);
+            if (child < replacementStart) {
+                adopted.push(child);
+                adopted.push(parents[child]);
+                adopted.push(nextSiblings[child]);
+            }
+            parents[child] = node;
+            if (lastTokens[child] != NONE) {
+                lastTokens[node] = lastTokens[child];
+            }
+            if (previous == NONE) {
+                firstChildren[node] = child;
+            } else {
+                nextSiblings[previous] = child;
+            }
+            previous = child;
+        }
+        if (previous != NONE) {
+            nextSiblings[previous] = NONE; // An adopted node may still point at its old sibling
+        }
+        return node;
+    }
+
+    // Adds the node a recovering parser puts in place of a non-terminal it could not parse. Its children
+    // are the nodes it dropped from the stack and the tokens it skipped.
+    public int addErrorNode(int nonterminal, IntStack stack, int count) {
+        errorCount++;
+        return addNode(nonterminal, stack, count, NONE);
+    }
+
+    public int errorCount() {
+        return errorCount;
+    }
+
+    public void setRoot(int node) {
+        root = node;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int symbol(int node) {
+        return symbols[node];
+    }
+
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int tokenIndex(int node) {
+        return tokenIndexes[node];
+    }
+
+    // The state on top of the parser stack when the first node of this subtree was created
+    public int state(int node) {
+        return states[node];
+    }
+
+    public int lastToken(int node) {
+        return lastTokens[node];
+    }
+
+    // The index of the subtree's first token, NONE if it has none
+    public int firstToken(int node) {
+        if (lastTokens[node] == NONE) {
+            return NONE;
+        }
+        while (!isLeaf(node)) {
+            int child = firstChildren[node];
+            while (lastTokens[child] == NONE) {
+                child = nextSiblings[child];
+            }
+            node = child;
+        }
+        return tokenIndexes[node];
+    }
+
+    // The first node the parser created for this subtree
+    public int firstNode(int node) {
+        while (firstChildren[node] != NONE) {
+            node = firstChildren[node];
+        }
+        return node;
+    }
+
+    // The leaf of the token at tokenIndex. The index is built on first use and then kept by the edits.
+    public int leaf(int tokenIndex) {
+        if (leaves == null) {
+            indexLeaves();
+        }
+        return leaves[tokenIndex];
+    }
+
+    // Points the tree at tokens, in which editStart..newEnd-1 took the place of the old editStart..oldEnd-1.
+    // The tokens after the edit move with it, and so does the end of node and of its ancestors, which hold
+    // the edit. The edit's own tokens have no leaf until replace puts in the new subtree.
+    public void moveTokens(TokenBuffer tokens, int editStart, int oldEnd, int newEnd, int node) {
+        if (leaves == null) {
+            indexLeaves();
+        }
+        int shift = newEnd - oldEnd;
+        if (shift != 0) {
+            // The subtrees that end where the edit ends are not moved by the sweep below
+            int ending = 0;
+            for (int n = node; n != NONE && lastTokens[n] == oldEnd - 1; n = parents[n]) {
+                ending++;
+            }
+            for (int n = 0; n < size; n++) {
+                if (tokenIndexes[n] >= oldEnd) {
+                    tokenIndexes[n] += shift;
+                }
+                if (lastTokens[n] >= oldEnd) {
+                    lastTokens[n] += shift;
+                }
+            }
+            for (int n = node; ending > 0; n = parents[n], ending--) {
+                lastTokens[n] += shift;
+            }
+
+            int moved = this.tokens.size() - oldEnd;
+            if (newEnd + moved > leaves.length) {
+                leaves = Arrays.copyOf(leaves, Math.max(newEnd + moved, leaves.length * 2));
+            }
+            System.arraycopy(leaves, oldEnd, leaves, newEnd, moved);
+        }
+        Arrays.fill(leaves, editStart, newEnd, NONE);
+        this.tokens = tokens;
+    }
+
+    // Starts building the replacement of a subtree. The older nodes it adopts are noted, so that rollback
+    // can give them back.
+    public void startReplacement() {
+        replacementStart = size;
+        adopted.clear();
+    }
+
+    // Drops the replacement built since startReplacement
+    public void rollback() {
+        for (int i = adopted.size() - 3; i >= 0; i -= 3) {
+            int node = adopted.get(i);
+            parents[node] = adopted.get(i + 1);
+            nextSiblings[node] = adopted.get(i + 2);
+        }
+        size = replacementStart;
+        replacementStart = NONE;
+        adopted.clear();
+    }
+
+    // Puts node, the root of the replacement built since startReplacement, in the place of old. The nodes
+    // old no longer reaches stay behind until there are as many of them as the tree had nodes, then compact
+    // drops them.
+    public void replace(int old, int node) {
+        int parent = parents[old];
+        parents[node] = parent;
+        nextSiblings[node] = nextSiblings[old];
+        if (old == root) {
+            root = node;
+        } else if (firstChildren[parent] == old) {
+            firstChildren[parent] = node;
+        } else {
+            int child = firstChildren[parent];
+            while (nextSiblings[child] != old) {
+                child = nextSiblings[child];
+            }
+            nextSiblings[child] = node;
+        }
+        for (int n = replacementStart; n < size; n++) {
+            if (isLeaf(n)) {
+                leaves[tokenIndexes[n]] = n;
+            }
+        }
+        if (inParseOrder) {
+            orderedSize = replacementStart;
+            inParseOrder = false;
+        }
+        replacementStart = NONE;
+        adopted.clear();
+        if (size > 2 * orderedSize) {
+            compact();
+        }
+    }
+
+    // Renumbers the nodes in the order a parse creates them, children before their parent, and drops the
+    // nodes replace left behind. The tree is then the one a full parse of its tokens builds, node for node.
+    // Node numbers from before do not carry over.
+    public void compact() {
+        if (inParseOrder) {
+            return;
+        }
+        int[] order = new int[size];
+        int count = 0;
+        int node = firstNode(root);
+        while (true) {
+            order[count++] = node;
+            if (node == root) {
+                break;
+            }
+            node = nextSiblings[node] != NONE ? firstNode(nextSiblings[node]) : parents[node];
+        }
+        if (endMarker != NONE) {
+            order[count++] = endMarker;
+        }
+
+        int[] numbers = new int[size];
+        for (int i = 0; i < count; i++) {
+            numbers[order[i]] = i;
+        }
+        int[][] columns = columns();
+        for (int c = 0; c < columns.length; c++) {
+            int[] column = columns[c];
+            boolean nodeColumn = column == parents || column == firstChildren || column == nextSiblings;
+            int[] compacted = new int[Math.max(count, 1)];
+            for (int i = 0; i < count; i++) {
+                int value = column[order[i]];
+                compacted[i] = nodeColumn && value != NONE ? numbers[value] : value;
+            }
+            columns[c] = compacted;
+        }
+        symbols = columns[0];
+        parents = columns[1];
+        firstChildren = columns[2];
+        nextSiblings = columns[3];
+        tokenIndexes = columns[4];
+        states = columns[5];
+        lastTokens = columns[6];
+        size = count;
+        root = numbers[root];
+        endMarker = endMarker != NONE ? numbers[endMarker] : NONE;
+        indexLeaves();
+        inParseOrder = true;
+    }
+
+    public boolean isLeaf(int node) {
+        return symbols[node] < ParseTables.TERMINAL_COUNT;
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    // The token text of a leaf ("$" for the end marker) or the non-terminal name of an inner node
+    public String text(int node) {
+        if (!isLeaf(node)) {
+            return nonterminals[symbols[node] - ParseTables.TERMINAL_COUNT];
+        }
+        return tokenIndexes[node] == NONE ? "$" : tokens.word(tokenIndexes[node]);
+    }
+
+    // The lexeme ID of a leaf's token, as the tokens' LexemeTable numbers it
+    public int lexemeId(int node) {
+        return tokenIndexes[node] == NONE ? LexemeTable.DOLLAR : tokens.lexemeId(tokenIndexes[node]);
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    private void indexLeaves() {
+        leaves = new int[Math.max(tokens.size(), 1)];
+        Arrays.fill(leaves, NONE);
+        for (int node = 0; node < size; node++) {
+            if (isLeaf(node) && tokenIndexes[node] != NONE) {
+                leaves[tokenIndexes[node]] = node;
+            }
+        }
+    }
+
+    // Binary form for CompileCache: the non-terminal names, then the node arrays. The tokens are not
+    // included, a tree read back refers to the buffer it is given.
+    public void write(DataOutputStream out) throws IOException {
+        compact();
+        out.writeInt(nonterminals.length);
+        for (String nonterminal : nonterminals) {
+            out.writeUTF(nonterminal);
+        }
+        out.writeInt(size);
+        out.writeInt(root);
+        out.writeInt(errorCount);
+        for (int[] column : columns()) {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(column[i]);
+            }
+        }
+    }
+
+    public static SyntaxTree read(DataInputStream in, TokenBuffer tokens) throws IOException {
+        String[] nonterminals = new String[in.readInt()];
+        for (int i = 0; i < nonterminals.length; i++) {
+            nonterminals[i] = in.readUTF();
+        }
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Corrupt syntax tree");
+        }
+        SyntaxTree tree = new SyntaxTree(tokens, nonterminals, size);
+        tree.size = size;
+        tree.root = in.readInt();
+        tree.errorCount = in.readInt();
+        for (int[] column : tree.columns()) {
+            for (int i = 0; i < size; i++) {
+                column[i] = in.readInt();
+            }
+        }
+        if (size > 0 && tree.isLeaf(size - 1) && tree.tokenIndexes[size - 1] == NONE) {
+            tree.endMarker = size - 1;
+        }
+        return tree;
+    }
+
+    private int[][] columns() {
+        return new int[][] { symbols, parents, firstChildren, nextSiblings, tokenIndexes, states, lastTokens };
+    }
+
+    private int newNode(int symbol, int state) {
+        if (size == symbols.length) {
+            grow(size * 2);
+        }
+        symbols[size] = symbol;
+        states[size] = state;
+        parents[size] = NONE;
+        firstChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        tokenIndexes[size] = NONE;
+        lastTokens[size] = NONE;
+        return size++;
+    }
+
+    private void grow(int capacity) {
+        symbols = Arrays.copyOf(symbols, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        tokenIndexes = Arrays.copyOf(tokenIndexes, capacity);
+        states = Arrays.copyOf(states, capacity);
+        lastTokens = Arrays.copyOf(lastTokens, capacity);
+    }
+}
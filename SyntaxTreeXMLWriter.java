@@ -0,0 +1,252 @@
+import java.io.*;
+import java.nio.file.*;
+import javax.xml.stream.*;
+
+// Writes parser.xml while the parser runs, so no part of the tree is held as XML in memory. Inner nodes
+// go straight to the output, leaves are spooled to a temporary file because LEAFNODES comes after
+// INNERNODES, and ROOT is written last once its node is known. UNIDs count up in the order the nodes
+// are created. The temporary file is next to the output file, or in the temporary directory when
+// writing to a stream, and is deleted once the document is complete or aborted.
+public class SyntaxTreeXMLWriter implements Closeable {
+    private final File outputFile; // Null when writing to a stream
+    private final File leafFile;
+    private final OutputStream out;
+    private final OutputStream leafOut;
+    private final XMLStreamWriter writer;
+    private final XMLStreamWriter leafWriter;
+    private final char[] digits = new char[11];
+    private int nodeId = 1;
+    private int rootId = 0;
+    private String rootSymbol;
+
+    public SyntaxTreeXMLWriter(String outputFile) throws IOException {
+        this(new File(outputFile), new BufferedOutputStream(new FileOutputStream(outputFile)));
+    }
+
+    // Writes to out, which close() leaves open
+    public SyntaxTreeXMLWriter(OutputStream out) throws IOException {
+        this(null, out);
+    }
+
+    // The output is already open, so the temporary file is only created once there is somewhere to write
+    private SyntaxTreeXMLWriter(File outputFile, OutputStream out) throws IOException {
+        this.outputFile = outputFile;
+        this.out = out;
+        File directory = outputFile != null ? outputFile.getAbsoluteFile().getParentFile() : null;
+        File spool = null;
+        try {
+            spool = File.createTempFile("leaves", ".xml", directory);
+            leafOut = new BufferedOutputStream(new FileOutputStream(spool));
+        } catch (IOException e) {
+            if (spool != null) {
+                spool.delete();
+            }
+            if (outputFile != null) {
+                try {
+                    out.close();
+                } catch (IOException closing) {
+                    e.addSuppressed(closing);
+                }
+                outputFile.delete();
+            }
+            throw e;
+        }
+        leafFile = spool;
+        writer = createWriter(out);
+        leafWriter = createWriter(leafOut);
+        start();
+    }
+
+    private XMLStreamWriter createWriter(OutputStream stream) throws IOException {
+        try {
+            return XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "UTF-8");
+        } catch (XMLStreamException e) {
+            abort();
+            throw new IOException("Could not write " + target() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void start() throws IOException {
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("SYNTREE");
+            writer.writeCharacters("\n  ");
+            writer.writeStartElement("INNERNODES");
+        } catch (XMLStreamException e) {
+            abort();
+            throw new IOException("Could not write " + target() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String target() {
+        return outputFile != null ? outputFile.toString() : "the syntax tree as XML";
+    }
+
+    // Writes a tree the parser built in memory. Replaying its nodes in creation order gives the same file
+    // as streaming them during the parse.
+    public static void write(SyntaxTree tree, String outputFile) throws IOException {
+        write(tree, new SyntaxTreeXMLWriter(outputFile));
+    }
+
+    public static void write(SyntaxTree tree, OutputStream out) throws IOException {
+        write(tree, new SyntaxTreeXMLWriter(out));
+    }
+
+    private static void write(SyntaxTree tree, SyntaxTreeXMLWriter writer) throws IOException {
+        tree.compact();
+        try {
+            for (int node = 0; node < tree.size(); node++) {
+                if (tree.isLeaf(node)) {
+                    writer.leaf(tree.text(node));
+                    continue;
+                }
+                writer.innerNode(tree.text(node), tree.childCount(node));
+                if (node == tree.root()) {
+                    writer.root(tree.text(node));
+                }
+            }
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.close();
+    }
+
+    public void leaf(String terminal) throws IOException {
+        try {
+            leafWriter.writeCharacters("\n    ");
+            leafWriter.writeStartElement("LEAF");
+            writeNumber(leafWriter, "PARENT", nodeId - 1, "\n      ");
+            writeNumber(leafWriter, "UNID", nodeId++, "\n      ");
+            writeText(leafWriter, "TERMINAL", terminal, "\n      ");
+            leafWriter.writeCharacters("\n    ");
+            leafWriter.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write " + target() + ": " + e.getMessage(), e);
+        }
+    }
+
+    // The CHILDREN of an inner node list the UNIDs just before its own, as parser.xml always has
+    public void innerNode(String symbol, int childCount) throws IOException {
+        try {
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("IN");
+            writer.writeAttribute("symbol", symbol);
+            writeNumber(writer, "PARENT", nodeId - 1, "\n      ");
+            int unid = nodeId++;
+            writeNumber(writer, "UNID", unid, "\n      ");
+            writeText(writer, "SYMB", symbol, "\n      ");
+            writeChildren(writer, unid + 1 - childCount, childCount, "\n      ");
+            writer.writeCharacters("\n    ");
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write " + target() + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Marks the inner node written last as the root. The root takes the next UNID.
+    public void root(String symbol) {
+        rootSymbol = symbol;
+        rootId = nodeId++;
+    }
+
+    // Completes the document: the spooled leaves, then ROOT
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.writeCharacters("\n  ");
+            writer.writeEndElement();
+            writer.writeCharacters("\n  ");
+            writer.writeStartElement("LEAFNODES");
+            writer.writeCharacters(""); // Completes the start tag before the leaves are copied in
+            writer.flush();
+            leafWriter.close();
+            leafOut.close();
+            Files.copy(leafFile.toPath(), out);
+            writer.writeCharacters("\n  ");
+            writer.writeEndElement();
+            if (rootSymbol != null) {
+                writer.writeCharacters("\n  ");
+                writer.writeStartElement("ROOT");
+                writeNumber(writer, "UNID", rootId, "\n    ");
+                writeText(writer, "SYMB", rootSymbol, "\n    ");
+                writeChildren(writer, rootId - 1, 1, "\n    ");
+                writer.writeCharacters("\n  ");
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write " + target() + ": " + e.getMessage(), e);
+        } finally {
+            try {
+                leafOut.close();
+                if (outputFile != null) {
+                    out.close();
+                } else {
+                    out.flush();
+                }
+            } finally {
+                Files.deleteIfExists(leafFile.toPath());
+            }
+        }
+    }
+
+    // Drops the partial output, e.g. after a parse error. A stream is left as it is, only the temporary
+    // file is deleted.
+    public void abort() {
+        try {
+            leafOut.close();
+        } catch (IOException e) {
+            // The file is deleted anyway
+        }
+        if (outputFile != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The file is deleted anyway
+            }
+        }
+        if (outputFile != null) {
+            outputFile.delete();
+        }
+        leafFile.delete();
+    }
+
+    private void writeChildren(XMLStreamWriter xml, int firstId, int count, String indent) throws XMLStreamException {
+        xml.writeCharacters(indent);
+        if (count == 0) {
+            xml.writeEmptyElement("CHILDREN");
+            return;
+        }
+        xml.writeStartElement("CHILDREN");
+        for (int i = 0; i < count; i++) {
+            writeNumber(xml, "ID", firstId + i, indent + "  ");
+        }
+        xml.writeCharacters(indent);
+        xml.writeEndElement();
+    }
+
+    private void writeNumber(XMLStreamWriter xml, String element, int value, String indent) throws XMLStreamException {
+        xml.writeCharacters(indent);
+        xml.writeStartElement(element);
+        int position = digits.length;
+        do {
+            digits[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        xml.writeCharacters(digits, position, digits.length - position);
+        xml.writeEndElement();
+    }
+
+    private void writeText(XMLStreamWriter xml, String element, String text, String indent) throws XMLStreamException {
+        xml.writeCharacters(indent);
+        xml.writeStartElement(element);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
+    }
+}
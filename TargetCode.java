@@ -1,55 +1,75 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-public class TargetCode {
+public class TargetCode implements Phase<List<String>, List<String>> {
     private static final int STACK_SIZE = 30;
-    private static int lineNumber = 10;
-    private static Map<String, String> variableMap = new HashMap<>();
-    private static Map<String, Integer> labelMap = new HashMap<>();
-    private static List<String> basicCode = new ArrayList<>();
-    private static Map<String, String> tempVarMap = new HashMap<>();
-    private static int tempNumVarCounter = 50;
+    private int lineNumber = 10;
+    private Map<String, String> variableMap = new HashMap<>();
+    private Map<String, Integer> labelMap = new HashMap<>();
+    private List<String> basicCode = new ArrayList<>();
+    private Map<String, String> tempVarMap = new HashMap<>();
+    private int tempNumVarCounter = 50;
     private static final String SYMBOL_FILE = "Symbol.txt";
     private static final String INTERMEDIATE_FILE = "intermediateCode.txt";
+    private final Symbols symbols;
 
+    // As a phase, BASIC variables are assigned from the scope analyzer's symbols instead of Symbol.txt
+    public TargetCode(Symbols symbols) {
+        this.symbols = symbols;
+    }
+
+    @Override
+    public String name() {
+        return "Target Code Generator";
+    }
+
+    @Override
+    public List<String> run(List<String> intermediateCode) {
+        mapVariables(symbols);
+        generateBasicCode(intermediateCode);
+        updateGotoLines();
+        return basicCode;
+    }
+
+    // Usage: java TargetCode [--workspace <directory>] <output-file>. Symbol.txt and intermediateCode.txt are
+    // read from the workspace, by default the current directory.
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java TargetCode <output-file>");
+        List<String> files = new ArrayList<>(Arrays.asList(args));
+        ArtifactStore workspace = ArtifactStore.workspace(files);
+        if (files.size() != 1) {
+            System.err.println("Usage: java TargetCode [--workspace <directory>] <output-file>");
             System.exit(1);
         }
 
-        String outputFile = args[0];
+        String outputFile = files.get(0);
 
         try {
             
-            if (!new File(SYMBOL_FILE).exists()) {
+            if (!workspace.contains(SYMBOL_FILE)) {
                 System.err.println("Error: Symbol table file '" + SYMBOL_FILE + "' not found");
                 System.exit(1);
             }
-            if (!new File(INTERMEDIATE_FILE).exists()) {
+            if (!workspace.contains(INTERMEDIATE_FILE)) {
                 System.err.println("Error: Intermediate code file '" + INTERMEDIATE_FILE + "' not found");
                 System.exit(1);
             }
 
             //load st
             System.out.println("Loading symbol table from " + SYMBOL_FILE + "...");
-            loadSymbolTable();
+            TargetCode generator = new TargetCode(loadSymbolTable(workspace));
 
             //read ic
             System.out.println("Reading intermediate code from " + INTERMEDIATE_FILE + "...");
-            List<String> intermediateCode = readIntermediateCode();
+            List<String> intermediateCode = readIntermediateCode(workspace);
 
             // gen basic
             System.out.println("Generating BASIC code...");
-            generateBasicCode(intermediateCode);
-            updateGotoLines();
+            generator.run(intermediateCode);
 
             // write tc
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-                for (String line : basicCode) {
-                    writer.write(line);
-                    writer.newLine();
-                }
+            try {
+                generator.writeBasicCodeToFile(outputFile);
                 System.out.println("BASIC code has been written to " + outputFile);
             } catch (IOException e) {
                 System.err.println("Error writing to output file: " + e.getMessage());
@@ -62,36 +82,44 @@ public class TargetCode {
         }
     }
 
-    private static void loadSymbolTable() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("Symbol.txt"))) {
+    private static Symbols loadSymbolTable(ArtifactStore workspace) {
+        Symbols symbols = new Symbols();
+        try (BufferedReader reader = workspace.reader(SYMBOL_FILE)) {
             String line;
-            int numVarCounter = 1;
-            char textVarCounter = 'A';
 
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(" : ");
                 if (parts.length == 3) {
-                    String originalName = parts[0];
-                    String generatedName = parts[1];
-                    String type = parts[2].trim();
-
-                    if (type.equals("num")) {
-                        variableMap.put(generatedName, "V" + numVarCounter + "%");
-                        numVarCounter++;
-                    } else if (type.equals("text")) {
-                        variableMap.put(generatedName, textVarCounter + "$");
-                        textVarCounter++;
-                    }
+                    symbols.add(parts[0], parts[1], parts[2].trim());
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return symbols;
     }
 
-    private static List<String> readIntermediateCode() {
+    // Numbers the variables in symbol table order: V1%, V2%, ... for num and A$, B$, ... for text
+    private void mapVariables(Symbols symbols) {
+        int numVarCounter = 1;
+        char textVarCounter = 'A';
+        for (int i = 0; i < symbols.size(); i++) {
+            String generatedName = symbols.uniqueName(i);
+            String type = symbols.type(i);
+
+            if (type.equals("num")) {
+                variableMap.put(generatedName, "V" + numVarCounter + "%");
+                numVarCounter++;
+            } else if (type.equals("text")) {
+                variableMap.put(generatedName, textVarCounter + "$");
+                textVarCounter++;
+            }
+        }
+    }
+
+    private static List<String> readIntermediateCode(ArtifactStore workspace) {
         List<String> code = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader("intermediateCode.txt"))) {
+        try (BufferedReader reader = workspace.reader(INTERMEDIATE_FILE)) {
             String line;
             while ((line = reader.readLine()) != null) {
                 code.add(line.trim());
@@ -102,7 +130,7 @@ public class TargetCode {
         return code;
     }
 
-    private static void generateBasicCode(List<String> intermediateCode) {
+    private void generateBasicCode(List<String> intermediateCode) {
         addLine("DIM M(7," + STACK_SIZE + ")");
         addLine("SP = 0");
         addLine("DIM R$");
@@ -255,7 +283,7 @@ public class TargetCode {
         }
     }
 
-    private static String translateVariable(String var) {
+    private String translateVariable(String var) {
         if (var == null || var.isEmpty()) {
             return "";
         }
@@ -281,7 +309,7 @@ public class TargetCode {
         }
     }
 
-    private static String translateExpression(String expr) {
+    private String translateExpression(String expr) {
         expr = expr.trim();
 
         if (expr.contains("=")) {
@@ -301,12 +329,12 @@ public class TargetCode {
         return translateVariable(expr);
     }
 
-    private static void addLine(String code) {
+    private void addLine(String code) {
         basicCode.add(lineNumber + " " + code);
         lineNumber += 10;
     }
 
-    private static void updateGotoLines() {
+    private void updateGotoLines() {
         for (int i = 0; i < basicCode.size(); i++) {
             String line = basicCode.get(i);
             if (line.contains("GOTO ") || line.contains("GOSUB ")) {
@@ -320,15 +348,12 @@ public class TargetCode {
         }
     }
 
-    private static void writeBasicCodeToFile() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("TargetCode.bas"))) {
+    private void writeBasicCodeToFile(String outputFile) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile, StandardCharsets.UTF_8))) {
             for (String line : basicCode) {
                 writer.write(line);
                 writer.newLine();
             }
-            System.out.println("BASIC code has been written to TargetCode.bas");
-        } catch (IOException e) {
-            System.err.println("Error writing to TargetCode.bas: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
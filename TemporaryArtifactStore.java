@@ -0,0 +1,20 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+// A directory store in a fresh temporary directory, which is deleted with its files on close
+public class TemporaryArtifactStore extends DirectoryArtifactStore {
+    public TemporaryArtifactStore() throws IOException {
+        super(Files.createTempDirectory("compile"));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> files = Files.walk(getDirectory())) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
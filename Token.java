@@ -20,13 +20,4 @@ public class Token {
     public String getWord() {
         return word;
     }
-
-    public String toXML() {
-        String sanitizedWord = word.replace("<", "lst");
-        return "<TOK>\n" +
-               "  <ID>" + id + "</ID>\n" +
-               "  <CLASS>" + type.toString().toLowerCase() + "</CLASS>\n" +
-               "  <WORD>" + sanitizedWord + "</WORD>\n" +
-               "</TOK>";
-    }
 }
@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+public class TokenBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // One slot per token in each array, so a token costs a few ints instead of an object graph
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] types = new int[INITIAL_CAPACITY];
+    private int[] lexemeIds = new int[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final LexemeTable lexemes;
+
+    public TokenBuffer() {
+        this(new LexemeTable());
+    }
+
+    public TokenBuffer(LexemeTable lexemes) {
+        this.lexemes = lexemes;
+    }
+
+    public void add(int id, TokenType type, int lexemeId, int offset, int length, int line) {
+        if (size == ids.length) {
+            grow(ids.length * 2);
+        }
+        ids[size] = id;
+        types[size] = type.ordinal();
+        lexemeIds[size] = lexemeId;
+        offsets[size] = offset;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+    }
+
+    public void add(int id, TokenType type, CharSequence word, int offset, int length, int line) {
+        add(id, type, lexemes.intern(word), offset, length, line);
+    }
+
+    // Appends every token of another buffer, numbering them from firstId, mapping their lexeme IDs
+    // through remap and shifting their lines by lineBase
+    public void append(TokenBuffer other, int firstId, int[] remap, int lineBase) {
+        int needed = size + other.size;
+        if (needed > ids.length) {
+            grow(Math.max(needed, ids.length * 2));
+        }
+        for (int i = 0; i < other.size; i++) {
+            ids[size + i] = firstId + i;
+            lexemeIds[size + i] = remap[other.lexemeIds[i]];
+            lines[size + i] = lineBase + other.lines[i];
+        }
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.offsets, 0, offsets, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        size = needed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int typeOrdinal(int index) {
+        return types[index];
+    }
+
+    public int lexemeId(int index) {
+        return lexemeIds[index];
+    }
+
+    public String word(int index) {
+        return lexemes.get(lexemeIds[index]);
+    }
+
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public LexemeTable lexemes() {
+        return lexemes;
+    }
+
+    // Object view of a single token, for callers that are not performance sensitive
+    public Token get(int index) {
+        return new Token(ids[index], type(index), word(index));
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        types = Arrays.copyOf(types, capacity);
+        lexemeIds = Arrays.copyOf(lexemeIds, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+}
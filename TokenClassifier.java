@@ -0,0 +1,157 @@
+import java.util.Arrays;
+
+public final class TokenClassifier {
+    // Character classes
+    private static final int C_LOWER = 0;
+    private static final int C_DIGIT = 1;
+    private static final int C_V = 2;
+    private static final int C_F = 3;
+    private static final int C_UNDERSCORE = 4;
+    private static final int C_QUOTE = 5;
+    private static final int C_MINUS = 6;
+    private static final int C_DOT = 7;
+    private static final int C_OPERATOR = 8;
+    private static final int C_OTHER = 9;
+    private static final int CLASS_COUNT = 10;
+
+    // DFA states
+    private static final int DEAD = -1;
+    private static final int START = 0;
+    private static final int S_V = 1;            // V
+    private static final int S_F = 2;            // F
+    private static final int S_V_UNDERSCORE = 3; // V_
+    private static final int S_F_UNDERSCORE = 4; // F_
+    private static final int S_VNAME = 5;        // V_[a-z]([a-z]|[0-9])*
+    private static final int S_FNAME = 6;        // F_[a-z]([a-z]|[0-9])*
+    private static final int S_TEXT_OPEN = 7;    // "[^"]*
+    private static final int S_TEXT = 8;         // "[^"]*"
+    private static final int S_MINUS = 9;        // -
+    private static final int S_INTEGER = 10;     // -?\d+
+    private static final int S_DOT = 11;         // -?\d+.
+    private static final int S_DECIMAL = 12;     // -?\d+.\d+
+    private static final int S_WORD = 13;        // [a-z]+ (keyword candidate)
+    private static final int S_OPERATOR = 14;    // single operator character
+    private static final int STATE_COUNT = 15;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+    private static final int[][] TRANSITIONS = new int[STATE_COUNT][CLASS_COUNT];
+    private static final TokenType[] ACCEPT = new TokenType[STATE_COUNT];
+
+    static {
+        Arrays.fill(CHAR_CLASS, (byte) C_OTHER);
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = C_LOWER;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = C_DIGIT;
+        CHAR_CLASS['V'] = C_V;
+        CHAR_CLASS['F'] = C_F;
+        CHAR_CLASS['_'] = C_UNDERSCORE;
+        CHAR_CLASS['"'] = C_QUOTE;
+        CHAR_CLASS['-'] = C_MINUS;
+        CHAR_CLASS['.'] = C_DOT;
+        for (char c : "=+*/<>!;,$(){}".toCharArray()) CHAR_CLASS[c] = C_OPERATOR;
+
+        for (int[] row : TRANSITIONS) Arrays.fill(row, DEAD);
+
+        TRANSITIONS[START][C_V] = S_V;
+        TRANSITIONS[START][C_F] = S_F;
+        TRANSITIONS[START][C_QUOTE] = S_TEXT_OPEN;
+        TRANSITIONS[START][C_MINUS] = S_MINUS;
+        TRANSITIONS[START][C_DIGIT] = S_INTEGER;
+        TRANSITIONS[START][C_LOWER] = S_WORD;
+        TRANSITIONS[START][C_OPERATOR] = S_OPERATOR;
+
+        TRANSITIONS[S_V][C_UNDERSCORE] = S_V_UNDERSCORE;
+        TRANSITIONS[S_F][C_UNDERSCORE] = S_F_UNDERSCORE;
+        TRANSITIONS[S_V_UNDERSCORE][C_LOWER] = S_VNAME;
+        TRANSITIONS[S_F_UNDERSCORE][C_LOWER] = S_FNAME;
+        TRANSITIONS[S_VNAME][C_LOWER] = S_VNAME;
+        TRANSITIONS[S_VNAME][C_DIGIT] = S_VNAME;
+        TRANSITIONS[S_FNAME][C_LOWER] = S_FNAME;
+        TRANSITIONS[S_FNAME][C_DIGIT] = S_FNAME;
+
+        // Anything but a quote stays inside the string literal
+        Arrays.fill(TRANSITIONS[S_TEXT_OPEN], S_TEXT_OPEN);
+        TRANSITIONS[S_TEXT_OPEN][C_QUOTE] = S_TEXT;
+
+        TRANSITIONS[S_MINUS][C_DIGIT] = S_INTEGER;
+        TRANSITIONS[S_INTEGER][C_DIGIT] = S_INTEGER;
+        TRANSITIONS[S_INTEGER][C_DOT] = S_DOT;
+        TRANSITIONS[S_DOT][C_DIGIT] = S_DECIMAL;
+        TRANSITIONS[S_DECIMAL][C_DIGIT] = S_DECIMAL;
+
+        TRANSITIONS[S_WORD][C_LOWER] = S_WORD;
+
+        ACCEPT[S_VNAME] = TokenType.V;
+        ACCEPT[S_FNAME] = TokenType.F;
+        ACCEPT[S_TEXT] = TokenType.T;
+        ACCEPT[S_INTEGER] = TokenType.N;
+        ACCEPT[S_DECIMAL] = TokenType.N;
+        ACCEPT[S_MINUS] = TokenType.RESERVED_KEYWORD; // Operators treated as reserved keywords
+        ACCEPT[S_OPERATOR] = TokenType.RESERVED_KEYWORD;
+        ACCEPT[S_WORD] = TokenType.RESERVED_KEYWORD; // Only if the word is a keyword, see classify
+    }
+
+    private TokenClassifier() {
+    }
+
+    // Classifies a whole word in a single left-to-right scan
+    public static TokenType classify(CharSequence word) {
+        int length = word.length();
+        int state = START;
+        for (int i = 0; i < length && state != DEAD; i++) {
+            char c = word.charAt(i);
+            state = TRANSITIONS[state][c < 128 ? CHAR_CLASS[c] : C_OTHER];
+        }
+        if (state == DEAD || ACCEPT[state] == null) {
+            return TokenType.INVALID;
+        }
+        if (state == S_WORD && !isKeyword(word)) {
+            return TokenType.INVALID;
+        }
+        return ACCEPT[state];
+    }
+
+    public static boolean isKeyword(CharSequence word) {
+        switch (word.charAt(0)) {
+            case 'a':
+                return is(word, "add") || is(word, "and");
+            case 'b':
+                return is(word, "begin");
+            case 'd':
+                return is(word, "div");
+            case 'e':
+                return is(word, "end") || is(word, "else") || is(word, "eq");
+            case 'g':
+                return is(word, "grt");
+            case 'h':
+                return is(word, "halt");
+            case 'i':
+                return is(word, "if") || is(word, "input");
+            case 'm':
+                return is(word, "main") || is(word, "mul");
+            case 'n':
+                return is(word, "num") || is(word, "not");
+            case 'o':
+                return is(word, "or");
+            case 'p':
+                return is(word, "print");
+            case 'r':
+                return is(word, "return");
+            case 's':
+                return is(word, "skip") || is(word, "sqrt") || is(word, "sub");
+            case 't':
+                return is(word, "then") || is(word, "text");
+            case 'v':
+                return is(word, "void");
+            default:
+                return false;
+        }
+    }
+
+    private static boolean is(CharSequence word, String keyword) {
+        if (word.length() != keyword.length()) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (word.charAt(i) != keyword.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Hands tokens from a lexer thread to a parser thread. Tokens travel in batches through a bounded queue,
+// so the lexer blocks once it is QUEUE_BATCHES ahead and each hand-off costs one lock per batch rather
+// than per token. Lexemes are sent once, the first time they appear, and re-interned by the consumer.
+public class TokenQueue implements TokenStream {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_BATCHES = 64;
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final Batch END = new Batch();
+
+    private static class Batch {
+        final int[] ids = new int[BATCH_SIZE];
+        final int[] types = new int[BATCH_SIZE];
+        final int[] lexemeIds = new int[BATCH_SIZE];
+        final int[] offsets = new int[BATCH_SIZE];
+        final int[] lengths = new int[BATCH_SIZE];
+        final int[] lines = new int[BATCH_SIZE];
+        final List<String> newLexemes = new ArrayList<>(); // Lexemes first seen in this batch, in ID order
+        int size = 0;
+    }
+
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+    private volatile boolean closed = false;
+    private volatile Throwable error;
+
+    // Producer side, only touched by the lexer thread
+    private Batch filling = new Batch();
+    private int published = LexemeTable.RESERVED_COUNT;
+
+    // Consumer side, only touched by the parser thread
+    private Batch reading;
+    private int position = 0;
+    private boolean ended = false;
+    private int[] remap = new int[0];
+    private int remapped = LexemeTable.RESERVED_COUNT;
+
+    // Adds a token whose lexeme ID comes from lexemes, the producer's own table
+    public void put(int id, TokenType type, int lexemeId, LexemeTable lexemes, int offset, int length, int line)
+            throws IOException {
+        while (published < lexemes.size()) {
+            filling.newLexemes.add(lexemes.get(published++));
+        }
+        Batch batch = filling;
+        int i = batch.size++;
+        batch.ids[i] = id;
+        batch.types[i] = type.ordinal();
+        batch.lexemeIds[i] = lexemeId;
+        batch.offsets[i] = offset;
+        batch.lengths[i] = length;
+        batch.lines[i] = line;
+        if (batch.size == BATCH_SIZE) {
+            publish(batch);
+            filling = new Batch();
+        }
+    }
+
+    // Called by the producer after the last token
+    public void finish() throws IOException {
+        if (filling.size > 0) {
+            publish(filling);
+        }
+        publish(END);
+    }
+
+    // Called by the producer when it stops on an error, the consumer rethrows it
+    public void fail(Throwable error) {
+        this.error = error;
+        try {
+            publish(END);
+        } catch (IOException e) {
+            // The consumer has already closed the queue
+        }
+    }
+
+    @Override
+    public boolean next(TokenBuffer tokens) throws IOException {
+        while (reading == null || position == reading.size) {
+            if (ended) {
+                return false;
+            }
+            try {
+                reading = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for tokens");
+            }
+            position = 0;
+            if (reading == END) {
+                ended = true;
+                reading = null;
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                } else if (error != null) {
+                    throw new IOException("Lexing failed: " + error.getMessage(), error);
+                }
+                return false;
+            }
+            for (String lexeme : reading.newLexemes) {
+                if (remapped >= remap.length) {
+                    remap = Arrays.copyOf(remap, Math.max(remapped + 1, remap.length * 2));
+                }
+                remap[remapped++] = tokens.lexemes().intern(lexeme);
+            }
+        }
+        int i = position++;
+        int lexemeId = reading.lexemeIds[i];
+        tokens.add(reading.ids[i], TYPES[reading.types[i]],
+                LexemeTable.isReserved(lexemeId) ? lexemeId : remap[lexemeId],
+                reading.offsets[i], reading.lengths[i], reading.lines[i]);
+        return true;
+    }
+
+    // Called by the consumer, also when it stops early. A producer still waiting for room gives up.
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    private void publish(Batch batch) throws IOException {
+        try {
+            do {
+                if (closed) {
+                    throw new IOException("Token queue closed by the consumer");
+                }
+            } while (!queue.offer(batch, 10, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing tokens");
+        }
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class TokenScanner {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int EOF = -1;
+
+    // Either a Reader refilling the char buffer, or a byte buffer (usually a file mapping) scanned in place
+    private final Reader reader;
+    private final char[] buffer;
+    private final ByteBuffer bytes;
+    private int position = 0;
+    private int limit = 0;
+
+    // Position of the next unread character (a byte offset when scanning bytes)
+    private long offset = 0;
+    private int line = 1;
+    private int column = 1;
+
+    // The token found by the last call to next()
+    private final StringBuilder lexeme = new StringBuilder();
+    private boolean ascii;
+    private TokenType type;
+    private long tokenOffset;
+    private int tokenLine;
+    private int tokenColumn;
+
+    public TokenScanner(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+        this.bytes = null;
+    }
+
+    // Scans the bytes between position and limit of the buffer directly. Token boundaries only depend on
+    // ASCII characters, so UTF-8 input can be scanned byte by byte and decoded per token when needed.
+    public TokenScanner(ByteBuffer bytes) {
+        this.reader = null;
+        this.buffer = null;
+        this.bytes = bytes;
+        this.position = bytes.position();
+        this.limit = bytes.limit();
+        this.offset = bytes.position();
+    }
+
+    public TokenScanner(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE));
+    }
+
+    // Finds the next token by maximal munch, returns false at the end of the input
+    public boolean next() throws IOException {
+        int c = peek();
+        while (c != EOF && isWhitespace(c)) {
+            advance();
+            c = peek();
+        }
+        if (c == EOF) {
+            return false;
+        }
+
+        lexeme.setLength(0);
+        ascii = true;
+        tokenOffset = offset;
+        tokenLine = line;
+        tokenColumn = column;
+
+        if (isDigit(c)) {
+            scanNumber();
+        } else if (isWordChar(c)) {
+            scanWhile(TokenScanner::isWordChar);
+            type = TokenClassifier.classify(lexeme);
+        } else if (c == '-') {
+            consume();
+            if (isDigit(peek())) {
+                scanNumber();
+            } else {
+                type = TokenType.RESERVED_KEYWORD;
+            }
+        } else if (c == '"') {
+            scanText();
+        } else if (isOperator(c)) {
+            consume();
+            type = TokenType.RESERVED_KEYWORD;
+        } else {
+            // Unknown character: take everything up to the next whitespace as the bad token
+            scanWhile(ch -> !isWhitespace(ch));
+            type = TokenType.INVALID;
+        }
+        return true;
+    }
+
+    public TokenType type() {
+        return type;
+    }
+
+    public CharSequence lexeme() {
+        return lexeme;
+    }
+
+    // The token text without allocating, unless scanned bytes have to be decoded
+    public CharSequence text() {
+        return bytes != null && !ascii ? word() : lexeme;
+    }
+
+    public String word() {
+        if (bytes != null) {
+            return decode(bytes, (int) tokenOffset, lexeme.length());
+        }
+        return lexeme.toString();
+    }
+
+    public long offset() {
+        return tokenOffset;
+    }
+
+    public int length() {
+        return lexeme.length();
+    }
+
+    public int line() {
+        return tokenLine;
+    }
+
+    public int column() {
+        return tokenColumn;
+    }
+
+    // Number of newlines read so far
+    public int newlines() {
+        return line - 1;
+    }
+
+    // Column of the next unread character
+    public int nextColumn() {
+        return column;
+    }
+
+    // The position just after the first whitespace at or after target that lies between two tokens and not
+    // inside a string literal, or limit if there is none. from must be a token boundary. The bytes from
+    // there on are stepped through the way next() splits them into tokens, without building the tokens.
+    static int tokenBoundary(ByteBuffer bytes, int from, int target, int limit) {
+        int i = from;
+        while (i < limit) {
+            int c = bytes.get(i) & 0xFF;
+            if (isWhitespace(c)) {
+                i++;
+                if (i > target) {
+                    return i;
+                }
+            } else if (c == '"') {
+                i++;
+                while (i < limit && bytes.get(i) != '"' && bytes.get(i) != '\n' && bytes.get(i) != '\r') {
+                    i++;
+                }
+                if (i < limit && bytes.get(i) == '"') {
+                    i++;
+                }
+            } else if (isDigit(c)) {
+                i = skipDigits(bytes, i, limit);
+                if (i < limit && bytes.get(i) == '.') {
+                    i = skipDigits(bytes, i + 1, limit);
+                }
+            } else if (isWordChar(c)) {
+                while (i < limit && isWordChar(bytes.get(i) & 0xFF)) {
+                    i++;
+                }
+            } else if (c == '-' || isOperator(c)) {
+                i++;
+            } else {
+                // An invalid token runs to the next whitespace, quotes included
+                while (i < limit && !isWhitespace(bytes.get(i) & 0xFF)) {
+                    i++;
+                }
+            }
+        }
+        return limit;
+    }
+
+    private static int skipDigits(ByteBuffer bytes, int i, int limit) {
+        while (i < limit && isDigit(bytes.get(i) & 0xFF)) {
+            i++;
+        }
+        return i;
+    }
+
+    private void scanNumber() throws IOException {
+        scanWhile(TokenScanner::isDigit);
+        if (peek() == '.') {
+            consume();
+            scanWhile(TokenScanner::isDigit);
+        }
+        type = TokenClassifier.classify(lexeme);
+    }
+
+    private void scanText() throws IOException {
+        consume(); // Opening quote
+        int c = peek();
+        while (c != EOF && c != '"' && c != '\n' && c != '\r') {
+            consume();
+            c = peek();
+        }
+        if (c == '"') {
+            consume();
+            type = TokenType.T;
+        } else {
+            type = TokenType.INVALID; // Unterminated string literal
+        }
+    }
+
+    private interface CharPredicate {
+        boolean test(int c);
+    }
+
+    private void scanWhile(CharPredicate predicate) throws IOException {
+        int c = peek();
+        while (c != EOF && predicate.test(c)) {
+            consume();
+            c = peek();
+        }
+    }
+
+    private void consume() throws IOException {
+        int c = peek();
+        lexeme.append((char) c);
+        ascii &= c < 0x80;
+        advance();
+    }
+
+    private int peek() throws IOException {
+        if (bytes != null) {
+            return position < limit ? bytes.get(position) & 0xFF : EOF;
+        }
+        if (position == limit) {
+            limit = reader.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position];
+    }
+
+    private void advance() {
+        int c = bytes != null ? bytes.get(position++) & 0xFF : buffer[position++];
+        offset++;
+        if (c == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+    }
+
+    static String decode(ByteBuffer bytes, int offset, int length) {
+        byte[] slice = new byte[length];
+        bytes.get(offset, slice);
+        return new String(slice, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+    }
+
+    private static boolean isOperator(int c) {
+        switch (c) {
+            case '=': case '+': case '*': case '/': case '<': case '>': case '!':
+            case ';': case ',': case '$': case '(': case ')': case '{': case '}':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
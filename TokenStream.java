@@ -0,0 +1,7 @@
+import java.io.*;
+
+// A source the parser pulls tokens from one at a time, so parsing can start before the whole input is read
+public interface TokenStream extends Closeable {
+    // Appends the next token to tokens, or returns false once the input is exhausted
+    boolean next(TokenBuffer tokens) throws IOException;
+}
@@ -0,0 +1,146 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Binary alternative to lexer.xml. Layout, all counts and numbers as unsigned varints:
+//   "RTOK" version
+//   string count, then each string as byte length + UTF-8 bytes (lexemes after the reserved words)
+//   token count, then each token as type ordinal, ID delta from the previous token, lexeme ID
+// Version 2 adds each token's position after its lexeme ID: offset delta, length and line delta from the
+// previous token. Version 1 tokens read back at offset 0 on line 0.
+public class TokenStreamFormat {
+    public static final String EXTENSION = ".tok";
+    private static final byte[] MAGIC = { 'R', 'T', 'O', 'K' };
+    private static final int VERSION = 1;
+    private static final int VERSION_WITH_POSITIONS = 2;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    public static boolean isBinary(String path) {
+        return path.endsWith(EXTENSION);
+    }
+
+    public static void write(TokenBuffer tokens, String path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+            write(tokens, out);
+        }
+    }
+
+    public static void write(TokenBuffer tokens, OutputStream out) throws IOException {
+        write(tokens, out, false);
+    }
+
+    public static void write(TokenBuffer tokens, OutputStream out, boolean positions) throws IOException {
+        out.write(MAGIC);
+        writeVarint(out, positions ? VERSION_WITH_POSITIONS : VERSION);
+
+        // The reserved words are pre-seeded in every LexemeTable, so only the rest is stored
+        LexemeTable lexemes = tokens.lexemes();
+        writeVarint(out, lexemes.size() - LexemeTable.RESERVED_COUNT);
+        for (int id = LexemeTable.RESERVED_COUNT; id < lexemes.size(); id++) {
+            byte[] bytes = lexemes.get(id).getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarint(out, tokens.size());
+        int previousId = 0;
+        int previousOffset = 0;
+        int previousLine = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            writeVarint(out, tokens.typeOrdinal(i));
+            writeVarint(out, tokens.id(i) - previousId);
+            writeVarint(out, tokens.lexemeId(i));
+            previousId = tokens.id(i);
+            if (positions) {
+                writeVarint(out, tokens.offset(i) - previousOffset);
+                writeVarint(out, tokens.length(i));
+                writeVarint(out, tokens.line(i) - previousLine);
+                previousOffset = tokens.offset(i);
+                previousLine = tokens.line(i);
+            }
+        }
+    }
+
+    public static TokenBuffer read(String path) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(path))) {
+            return read(in);
+        }
+    }
+
+    public static TokenBuffer read(InputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        readFully(in, magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a token stream file");
+            }
+        }
+        int version = readVarint(in);
+        if (version != VERSION && version != VERSION_WITH_POSITIONS) {
+            throw new IOException("Unsupported token stream version " + version);
+        }
+
+        LexemeTable lexemes = new LexemeTable();
+        int strings = readVarint(in);
+        for (int i = 0; i < strings; i++) {
+            byte[] bytes = new byte[readVarint(in)];
+            readFully(in, bytes);
+            lexemes.intern(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        TokenBuffer tokens = new TokenBuffer(lexemes);
+        int count = readVarint(in);
+        int id = 0;
+        int offset = 0;
+        int line = 0;
+        for (int i = 0; i < count; i++) {
+            int type = readVarint(in);
+            id += readVarint(in);
+            int lexemeId = readVarint(in);
+            if (type >= TYPES.length || lexemeId >= lexemes.size()) {
+                throw new IOException("Corrupt token stream at token " + i);
+            }
+            int length = lexemes.get(lexemeId).length();
+            if (version == VERSION_WITH_POSITIONS) {
+                offset += readVarint(in);
+                length = readVarint(in);
+                line += readVarint(in);
+            }
+            tokens.add(id, TYPES[type], lexemeId, offset, length, line);
+        }
+        return tokens;
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated token stream");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in token stream");
+    }
+
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new EOFException("Truncated token stream");
+            }
+            read += n;
+        }
+    }
+}
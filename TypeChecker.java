@@ -1,24 +1,65 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-public class TypeChecker {
-    private static Map<String, String> symbolTable = new HashMap<>();
-    private static List<String> errors = new ArrayList<>();
-    private static int currentLine = 0;
-    private static boolean debug = true; //set false for less detailed output
-    private static String currentFunction = null;
-    private static String currentFunctionType = null;
-    private static boolean hasReturnStatement = false;
-    private static Set<String> currentFunctionCalls = new HashSet<>();
+public class TypeChecker implements Phase<Symbols, Symbols> {
+    // The symbol table, keyed by lexeme ID: types[id] is the lexeme ID of the declared type + 1, 0 if id has none
+    private final LexemeTable lexemes;
+    private int[] types;
+    private int symbolCount = 0;
+    private List<String> errors = new ArrayList<>();
+    private int currentLine = 0;
+    private boolean debug = true; //set false for less detailed output
+    private String currentFunction = null;
+    private int currentFunctionType = -1; // The lexeme ID of its return type
+    private boolean hasReturnStatement = false;
+    private Set<String> currentFunctionCalls = new HashSet<>();
     private static final String SYMBOL_FILE = "Symbol.txt";
+    private String source; // The program text, checked line by line
 
+    public TypeChecker() {
+        this(null, new LexemeTable());
+    }
+
+    // lexemes are the lexer's, so the names in the symbol table already have IDs
+    public TypeChecker(String source, LexemeTable lexemes) {
+        this.source = source;
+        this.lexemes = lexemes;
+        types = new int[Math.max(lexemes.size(), 1)];
+    }
+
+    @Override
+    public String name() {
+        return "Type Checker";
+    }
+
+    // Checks the program against the symbols and passes them on unchanged when it has no type errors
+    @Override
+    public Symbols run(Symbols symbols) throws Exception {
+        for (int i = 0; i < symbols.size(); i++) {
+            declare(symbols.name(i), symbols.type(i));
+        }
+        if (symbolCount == 0) {
+            throw new Exception("Symbol table is empty");
+        }
+        checkLines(new BufferedReader(new StringReader(source)));
+        printErrors();
+        if (!errors.isEmpty()) {
+            throw new Exception(errors.size() + " type error(s) found");
+        }
+        return symbols;
+    }
+
+    // Usage: java TypeChecker [--workspace <directory>] <input-file>, Symbol.txt is read from the workspace
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java TypeChecker <input-file>");
+        List<String> files = new ArrayList<>(Arrays.asList(args));
+        ArtifactStore workspace = ArtifactStore.workspace(files);
+        if (files.size() != 1) {
+            System.err.println("Usage: java TypeChecker [--workspace <directory>] <input-file>");
             System.exit(1);
         }
 
-        String inputFile = args[0];
+        String inputFile = files.get(0);
 
         //check input file
         if (!new File(inputFile).exists()) {
@@ -27,30 +68,31 @@ public class TypeChecker {
         }
 
         // load st and type checker
-        if (loadSymbolTable(SYMBOL_FILE)) {
-            checkProgram(inputFile);
-            printErrors();
+        TypeChecker checker = new TypeChecker();
+        if (checker.loadSymbolTable(workspace, SYMBOL_FILE)) {
+            checker.checkProgram(inputFile);
+            checker.printErrors();
         } else {
             System.exit(1);
         }
     }
 
-    private static boolean loadSymbolTable(String filename) { //load the symbol table
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+    private boolean loadSymbolTable(ArtifactStore workspace, String filename) { //load the symbol table
+        try (BufferedReader br = workspace.reader(filename)) {
             String line;
             int lineCount = 0;
             while ((line = br.readLine()) != null) {
                 lineCount++;
                 String[] parts = line.split(":");
                 if (parts.length == 3) {
-                    symbolTable.put(parts[0].trim(), parts[2].trim());
+                    declare(parts[0].trim(), parts[2].trim());
                 } else {
                     System.err.println("Error in " + filename + " line " + lineCount + ": Invalid format");
                     System.err.println("Expected format: identifier:scope:type");
                     return false;
                 }
             }
-            if (symbolTable.isEmpty()) {
+            if (symbolCount == 0) {
                 System.err.println("Error: Symbol table is empty");
                 return false;
             }
@@ -64,8 +106,8 @@ public class TypeChecker {
         }
     }
 
-    private static void checkReturn(String line) {
-        if (currentFunction == null || currentFunctionType == null) {
+    private void checkReturn(String line) {
+        if (currentFunction == null || currentFunctionType < 0) {
             return; 
         }
 
@@ -82,7 +124,7 @@ public class TypeChecker {
             value = value.substring(0, value.length() - 1).trim();
         }
     
-        if (currentFunctionType.equals("void")) {
+        if (currentFunctionType == LexemeTable.VOID) {
             if (!value.isEmpty()) {
                 addError("Void function cannot return a value"); //no return value for void functions
             }
@@ -90,7 +132,7 @@ public class TypeChecker {
         }
     
         
-        if (currentFunctionType.equals("num")) {
+        if (currentFunctionType == LexemeTable.NUM) {
             hasReturnStatement = true;  //function must have numeric return
             if (value.startsWith("\"")) {
                 addError("Function " + currentFunction + " has return type num but is returning text");
@@ -104,39 +146,43 @@ public class TypeChecker {
     }
     
    
-    private static void checkFunctionBody(String line) {
+    private void checkFunctionBody(String line) {
         if (line.equals("{")) {
             hasReturnStatement = false; 
         } else if (line.equals("}")) {
             
-            if (currentFunctionType != null && currentFunctionType.equals("num") && !hasReturnStatement) {
+            if (currentFunctionType == LexemeTable.NUM && !hasReturnStatement) {
                 addError("Function " + currentFunction + " must have a return statement"); //num function must have a return 
             }
             currentFunction = null;
-            currentFunctionType = null;
+            currentFunctionType = -1;
             hasReturnStatement = false;
         } else if (line.startsWith("return") ) { //check num fuction has a return statement
             hasReturnStatement = true;
         }
     }
 
-    private static void checkProgram(String filename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                currentLine++;
-                if (debug) {
-                    System.out.println("Checking line " + currentLine + ": " + line);
-                }
-                checkLine(line.trim());
-            }
+    private void checkProgram(String filename) {
+        try (BufferedReader br = new BufferedReader(new FileReader(filename, StandardCharsets.UTF_8))) {
+            checkLines(br);
         } catch (IOException e) {
             System.err.println("Error reading program file: " + e.getMessage());
             System.exit(1);
         }
     }
 
-    private static void checkLine(String line) {
+    private void checkLines(BufferedReader br) throws IOException {
+        String line;
+        while ((line = br.readLine()) != null) {
+            currentLine++;
+            if (debug) {
+                System.out.println("Checking line " + currentLine + ": " + line);
+            }
+            checkLine(line.trim());
+        }
+    }
+
+    private void checkLine(String line) {
         line = line.trim();
         
         checkFunctionBody(line);
@@ -149,7 +195,7 @@ public class TypeChecker {
             String[] parts = line.split("\\s+|\\(");
             if (parts.length >= 2) {
                 currentFunction = parts[1];
-                currentFunctionType = parts[0];
+                currentFunctionType = lexemes.find(parts[0]);
             }
             checkFunctionDeclaration(line);
         } else if (line.contains("<")) { //input
@@ -165,8 +211,7 @@ public class TypeChecker {
         } else if (line.contains("(")) {
             String funcName = line.substring(0, line.indexOf("(")).trim();
             if (funcName.startsWith("F_")) { //user def function
-                String funcType = symbolTable.get(funcName);
-                if (funcType != null && funcType.equals("num")) {
+                if (typeOf(funcName) == LexemeTable.NUM) {
                     addError("Function " + funcName + " has return type num and must be used in an assignment");
                 }
             }
@@ -174,7 +219,7 @@ public class TypeChecker {
         }
     }
 
-    private static void checkFunctionDeclaration(String line) {
+    private void checkFunctionDeclaration(String line) {
         line = line.replace("{", "").trim(); 
         String[] parts = line.split("\\(", 2);
         if (parts.length != 2) {
@@ -206,27 +251,26 @@ public class TypeChecker {
             if (!paramName.startsWith("V_")) {
                 addError("Function parameter must start with V_: " + paramName);
             }
-            String paramType = symbolTable.get(paramName);
-            if (paramType == null || !paramType.equals("num")) {
+            if (typeOf(paramName) != LexemeTable.NUM) {
                 addError("Function parameter must be of type num: " + paramName);//all user defined function parameters are num
             }
         }
         
-        String declaredType = symbolTable.get(funcName);
-        if (declaredType == null) {
+        int declaredType = typeOf(funcName);
+        if (declaredType < 0) {
             addError("Function " + funcName + " is not declared in the symbol table");
-        } else if (!declaredType.equals(returnType)) {
-            addError("return type mismatch for function " + funcName + ": declared as " + declaredType + ", but defined as " + returnType);
+        } else if (declaredType != lexemes.find(returnType)) {
+            addError("return type mismatch for function " + funcName + ": declared as " + lexemes.get(declaredType) + ", but defined as " + returnType);
         }
     }
 
-    private static void checkInput(String line) {
+    private void checkInput(String line) {
         String[] parts = line.split("<");
         String var = parts[0].trim();
         checkVariableType(var);
     }
 
-    private static void checkCondition(String line) {
+    private void checkCondition(String line) {
         
         String conditionPart = line.substring(2).trim();
         
@@ -248,7 +292,7 @@ public class TypeChecker {
         }
     }
 
-    private static void checkAssignment(String line) {
+    private void checkAssignment(String line) {
         String[] parts = line.split("=");
         String left = parts[0].trim();
         String right = parts[1].trim().replace(";", "");
@@ -276,7 +320,7 @@ public class TypeChecker {
 
     
 
-    private static void checkFunctionCall(String line) {
+    private void checkFunctionCall(String line) {
         String funcName = line.substring(0, line.indexOf("(")).trim();
         String params = line.substring(line.indexOf("(") + 1, line.lastIndexOf(")"));
         String[] paramList = params.split(",");
@@ -294,7 +338,7 @@ public class TypeChecker {
         }
     }
 
-    private static void checkDeclaration(String line) {
+    private void checkDeclaration(String line) {
         String[] parts = line.split(",");
         
         for (String part : parts) {
@@ -306,10 +350,10 @@ public class TypeChecker {
             
             if (!name.startsWith("V_")) {
                 addError("Invalid variable name: " + name);
-            } else if (symbolTable.containsKey(name)) {
-                String declaredType = symbolTable.get(name);
-                if (!declaredType.equals(type)) {
-                    addError("type mismatch in declaration: " + name + " declared as " + type + ", but symbol table says " + declaredType);
+            } else if (typeOf(name) >= 0) {
+                int declaredType = typeOf(name);
+                if (declaredType != lexemes.find(type)) {
+                    addError("type mismatch in declaration: " + name + " declared as " + type + ", but symbol table says " + lexemes.get(declaredType));
                 }
             } else {
                 if (debug) {
@@ -319,7 +363,7 @@ public class TypeChecker {
         }
     }
 
-    private static String checkExpression(String expression) {
+    private String checkExpression(String expression) {
         expression = expression.trim();
         if (expression.isEmpty()) {
             addError("Empty expression");
@@ -349,7 +393,7 @@ public class TypeChecker {
         }
     }
 
-    private static boolean isBooleanOperation(String expression) {
+    private boolean isBooleanOperation(String expression) {
         expression = expression.trim();
         if (!expression.contains("(")) {
             return false;
@@ -360,7 +404,7 @@ public class TypeChecker {
                outerFunc.equals("and") || outerFunc.equals("or");
     }
     
-    private static String getArguments(String expression) {
+    private String getArguments(String expression) {
         int parenthesesCount = 1;
         int startIndex = expression.indexOf("(") + 1;
         
@@ -376,7 +420,7 @@ public class TypeChecker {
         return "";
     }
     
-    private static String[] splitArguments(String argsString) {
+    private String[] splitArguments(String argsString) {
         if (!argsString.contains(",")) {
             return new String[]{argsString.trim()};
         }
@@ -408,25 +452,44 @@ public class TypeChecker {
         return args.toArray(new String[0]);
     }
 
-    private static String getVariableType(String var) {
-        String type = symbolTable.getOrDefault(var, "unknown");
-        if (type.equals("unknown")) {
+    private String getVariableType(String var) {
+        int type = typeOf(var);
+        if (type < 0) {
             addError("Undefined variable: " + var);
+            return "unknown";
         }
-        return type;
+        return lexemes.get(type);
     }
 
-    private static void checkVariableType(String var) {
-        if (!symbolTable.containsKey(var)) {
+    private void checkVariableType(String var) {
+        if (typeOf(var) < 0) {
             addError("Undefined variable: " + var);
         }
     }
 
-    private static void addError(String message) {
+    private void declare(String name, String type) {
+        int id = lexemes.intern(name);
+        if (id >= types.length) {
+            types = Arrays.copyOf(types, Math.max(id + 1, types.length * 2));
+        }
+        if (types[id] == 0) {
+            symbolCount++;
+        }
+        types[id] = lexemes.intern(type) + 1;
+    }
+
+    // The lexeme ID of the type the symbol table gives name, or -1 if it has none. Looking a name up never
+    // adds it to the lexemes.
+    private int typeOf(String name) {
+        int id = lexemes.find(name);
+        return id >= 0 && id < types.length ? types[id] - 1 : -1;
+    }
+
+    private void addError(String message) {
         errors.add("Line " + currentLine + ": Type Error: " + message);
     }
 
-    private static void printErrors() {
+    private void printErrors() {
         if (errors.isEmpty()) {
             System.out.println("No type errors found.");
         } else {
@@ -436,13 +499,14 @@ public class TypeChecker {
         }
     }
 
-    private static String checkUserDefinedFunction(String funcName, String[] paramList) {
-        if (!symbolTable.containsKey(funcName)) {
+    private String checkUserDefinedFunction(String funcName, String[] paramList) {
+        int funcTypeId = typeOf(funcName);
+        if (funcTypeId < 0) {
             addError("Undefined function: " + funcName);
             return "unknown";
         }
 
-        String funcType = symbolTable.get(funcName);
+        String funcType = lexemes.get(funcTypeId);
 
         if (paramList.length != 3) {
             addError("Function " + funcName + " must have exactly 3 parameters"); //user def functions have 3 parameters
@@ -459,7 +523,7 @@ public class TypeChecker {
         return funcType;
     }
 
-    private static void checkUnaryOperation(String op, String[] args) {
+    private void checkUnaryOperation(String op, String[] args) {
         if (args.length != 1) {
             addError("Operator " + op + " needs exactly 1 argument");
             return;
@@ -471,7 +535,7 @@ public class TypeChecker {
         }
     }
 
-    private static void checkBinaryOperation(String op, String[] args) {
+    private void checkBinaryOperation(String op, String[] args) {
         if (args.length != 2) {
             addError("Operator " + op + " needs exactly 2 arguments");
             return;
@@ -490,7 +554,7 @@ public class TypeChecker {
         }
     }
 
-    private static void checkBuiltInFunction(String funcName, String[] args) {
+    private void checkBuiltInFunction(String funcName, String[] args) {
         switch (funcName) {
             case "grt":
                 if (args.length != 2) {
@@ -560,7 +624,7 @@ public class TypeChecker {
         }
     }
     
-    private static boolean isNumeric(String str) { //check if a value is numeric
+    private boolean isNumeric(String str) { //check if a value is numeric
         if (str == null || str.trim().isEmpty()) {
             return false;
         }
@@ -572,7 +636,7 @@ public class TypeChecker {
         }
     }
     
-    private static String inferType(String expression) { //get num/text type
+    private String inferType(String expression) { //get num/text type
         expression = expression.trim();
         if (expression.isEmpty()) {
             return "unknown";
@@ -584,12 +648,13 @@ public class TypeChecker {
             return "num";
         }
         if (expression.startsWith("V_")) {
-            return symbolTable.getOrDefault(expression, "bool"); //default 
+            int type = typeOf(expression);
+            return type >= 0 ? lexemes.get(type) : "bool"; //default 
         }
         return "unknown";
     }
 
-    private static boolean isBooleanLikeExpression(String expression) {
+    private boolean isBooleanLikeExpression(String expression) {
         if (expression.contains("(")) {
             String funcName = expression.substring(0, expression.indexOf("(")).trim();
             return funcName.equals("eq") || funcName.equals("grt") || funcName.equals("and") || funcName.equals("or") || funcName.equals("not");
@@ -597,7 +662,7 @@ public class TypeChecker {
         return false;
     }
 
-    private static boolean isBuiltInFunction(String funcName) {
+    private boolean isBuiltInFunction(String funcName) {
         return Arrays.asList("add", "sub", "mul", "div", "and", "or", "not", "eq", "grt", "sqrt").contains(funcName);
     }
 }
@@ -0,0 +1,66 @@
+import java.io.*;
+import javax.xml.stream.*;
+
+// Pulls the TOK elements of lexer.xml with a StAX reader, so no DOM is built for the token stream
+public class XMLTokenReader implements TokenStream {
+    private final String path;
+    private final InputStream in;
+    private final XMLStreamReader reader;
+
+    public XMLTokenReader(String path) throws IOException {
+        this.path = path;
+        in = new BufferedInputStream(new FileInputStream(path));
+        try {
+            reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            in.close();
+            throw new IOException("Could not read " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean next(TokenBuffer tokens) throws IOException {
+        try {
+            String id = null;
+            String type = null;
+            String word = null;
+            boolean inToken = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("TOK")) {
+                        inToken = true;
+                    } else if (inToken && name.equals("ID")) {
+                        id = reader.getElementText();
+                    } else if (inToken && name.equals("CLASS")) {
+                        type = reader.getElementText();
+                    } else if (inToken && name.equals("WORD")) {
+                        word = reader.getElementText();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("TOK")) {
+                    if (id == null || type == null || word == null) {
+                        throw new IOException("Incomplete TOK element in " + path + " at line "
+                                + reader.getLocation().getLineNumber());
+                    }
+                    tokens.add(Integer.parseInt(id.trim()), TokenType.valueOf(type.trim().toUpperCase()), word,
+                            0, word.length(), 0);
+                    return true;
+                }
+            }
+            return false;
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not read " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // The stream below is closed either way
+        }
+        in.close();
+    }
+}